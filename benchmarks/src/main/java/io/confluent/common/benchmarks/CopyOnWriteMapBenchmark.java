@@ -0,0 +1,62 @@
+package io.confluent.common.benchmarks;
+
+import io.confluent.common.utils.CopyOnWriteMap;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 读优化Map的读写基准测试，写操作耗时与Map大小成正比
+ *
+ * @author wanggang
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CopyOnWriteMapBenchmark {
+
+	@Param({ "10", "1000", "100000" })
+	public int size;
+
+	private CopyOnWriteMap<String, Integer> map;
+	private String[] keys;
+	private int next;
+
+	@Setup
+	public void setup() {
+		map = new CopyOnWriteMap<>();
+		keys = new String[size];
+		for (int i = 0; i < size; i++) {
+			keys[i] = "key-" + i;
+			map.put(keys[i], i);
+		}
+	}
+
+	@Benchmark
+	public Integer get() {
+		next = (next + 1) % size;
+		return map.get(keys[next]);
+	}
+
+	@Benchmark
+	public Integer put() {
+		next = (next + 1) % size;
+		return map.put(keys[next], next);
+	}
+
+}
@@ -0,0 +1,82 @@
+package io.confluent.common.benchmarks;
+
+import io.confluent.common.metrics.JmxReporter;
+import io.confluent.common.metrics.MetricName;
+import io.confluent.common.metrics.Metrics;
+import io.confluent.common.metrics.Sensor;
+import io.confluent.common.metrics.stats.Avg;
+import io.confluent.common.metrics.stats.Max;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 通过MBeanServer读取JMX属性的基准测试，同时有线程在记录数据
+ *
+ * @author wanggang
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class JmxReporterBenchmark {
+
+	private Metrics metrics;
+	private Sensor sensor;
+	private MBeanServer server;
+	private ObjectName objectName;
+
+	@Setup
+	public void setup() throws Exception {
+		metrics = new Metrics();
+		metrics.addReporter(new JmxReporter("benchmark"));
+		sensor = metrics.sensor("jmx");
+		sensor.add(new MetricName("latency-avg", "jmx-benchmark"), new Avg());
+		sensor.add(new MetricName("latency-max", "jmx-benchmark"), new Max());
+		server = ManagementFactory.getPlatformMBeanServer();
+		objectName = new ObjectName("benchmark:type=jmx-benchmark");
+	}
+
+	@TearDown
+	public void tearDown() {
+		metrics.close();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public Object readAttribute() throws Exception {
+		return server.getAttribute(objectName, "latency-avg");
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Object readAttributeContended() throws Exception {
+		return server.getAttribute(objectName, "latency-avg");
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void recordWhileReading() {
+		sensor.record(42.0);
+	}
+
+}
@@ -0,0 +1,77 @@
+package io.confluent.common.benchmarks;
+
+import io.confluent.common.metrics.Metrics;
+import io.confluent.common.metrics.Sensor;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 仓库中获取或者创建Sensor的基准测试
+ *
+ * @author wanggang
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class MetricsRegistryBenchmark {
+
+	// 每次创建的Sensor数
+	private static final int BATCH = 100;
+
+	// 仓库中已有的Sensor数
+	@Param({ "10", "1000" })
+	public int sensors;
+
+	private Metrics metrics;
+	private String[] names;
+	private String[] newNames;
+	private int next;
+
+	@Setup
+	public void setup() {
+		metrics = new Metrics();
+		names = new String[sensors];
+		for (int i = 0; i < sensors; i++) {
+			names[i] = "sensor-" + i;
+			metrics.sensor(names[i]);
+		}
+		newNames = new String[BATCH];
+		for (int i = 0; i < BATCH; i++) {
+			newNames[i] = "new-sensor-" + i;
+		}
+	}
+
+	@Benchmark
+	public Sensor getExisting() {
+		next = (next + 1) % sensors;
+		return metrics.sensor(names[next]);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public Metrics createNew() {
+		Metrics registry = new Metrics();
+		for (int i = 0; i < BATCH; i++) {
+			registry.sensor(newNames[i]);
+		}
+		return registry;
+	}
+
+}
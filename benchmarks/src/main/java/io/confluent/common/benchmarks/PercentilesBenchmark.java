@@ -0,0 +1,74 @@
+package io.confluent.common.benchmarks;
+
+import io.confluent.common.metrics.MetricConfig;
+import io.confluent.common.metrics.MetricName;
+import io.confluent.common.metrics.stats.HistogramArena;
+import io.confluent.common.metrics.stats.Percentile;
+import io.confluent.common.metrics.stats.Percentiles;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 百分比计算的基准测试，计算耗时与桶数成正比
+ *
+ * @author wanggang
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class PercentilesBenchmark {
+
+	@Param({ "400", "4000", "40000" })
+	public int sizeInBytes;
+
+	@Param({ "CONSTANT", "LINEAR" })
+	public Percentiles.BucketSizing bucketing;
+
+	@Param({ "false", "true" })
+	public boolean offHeap;
+
+	private final MetricConfig config = new MetricConfig();
+	private Percentiles percentiles;
+	private long now;
+
+	@Setup
+	public void setup() {
+		percentiles = new Percentiles(sizeInBytes, 0.0, 1000.0, bucketing,
+				offHeap ? new HistogramArena() : null, new Percentile(
+				new MetricName("p50", "benchmark"), 50.0), new Percentile(new MetricName("p99",
+				"benchmark"), 99.0));
+		now = System.currentTimeMillis();
+		Random random = new Random(0);
+		for (int i = 0; i < 100000; i++) {
+			percentiles.record(config, 1000.0 * random.nextDouble(), now);
+		}
+	}
+
+	@Benchmark
+	public double median() {
+		return percentiles.value(config, now, 0.5);
+	}
+
+	@Benchmark
+	public double p99() {
+		return percentiles.value(config, now, 0.99);
+	}
+
+}
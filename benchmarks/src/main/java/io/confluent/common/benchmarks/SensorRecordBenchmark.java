@@ -0,0 +1,107 @@
+package io.confluent.common.benchmarks;
+
+import io.confluent.common.metrics.MetricConfig;
+import io.confluent.common.metrics.MetricName;
+import io.confluent.common.metrics.Metrics;
+import io.confluent.common.metrics.Quota;
+import io.confluent.common.metrics.Sensor;
+import io.confluent.common.metrics.stats.Avg;
+import io.confluent.common.metrics.stats.Count;
+import io.confluent.common.metrics.stats.Max;
+import io.confluent.common.metrics.stats.Rate;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sensor记录数据的基准测试，覆盖父Sensor、越界检查和异步记录几种情况
+ *
+ * @author wanggang
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SensorRecordBenchmark {
+
+	// 是否带有父Sensor
+	@Param({ "false", "true" })
+	public boolean parents;
+
+	// 是否设置越界检查
+	@Param({ "false", "true" })
+	public boolean quota;
+
+	// 是否异步记录，缓冲区满时丢弃
+	@Param({ "false", "true" })
+	public boolean async;
+
+	private Metrics metrics;
+	private Sensor sensor;
+	// 记录级别为DEBUG的传感器，仓库级别为INFO时不记录
+	private Sensor disabled;
+
+	@Setup
+	public void setup() {
+		metrics = new Metrics();
+		Sensor[] parentSensors = new Sensor[0];
+		if (parents) {
+			Sensor parent = metrics.sensor("parent");
+			parent.add(new MetricName("parent.avg", "benchmark"), new Avg());
+			parent.add(new MetricName("parent.count", "benchmark"), new Count());
+			parentSensors = new Sensor[] { parent };
+		}
+		MetricConfig sensorConfig = async ? new MetricConfig().asyncRecording(65536,
+				MetricConfig.OverflowPolicy.DROP) : null;
+		sensor = metrics.sensor("child", sensorConfig, parentSensors);
+		// 越界上限不会被触发，只衡量检查本身的开销
+		MetricConfig config = quota ? new MetricConfig().quota(Quota
+				.lessThan(Double.POSITIVE_INFINITY)) : null;
+		sensor.add(new MetricName("child.avg", "benchmark"), new Avg(), config);
+		sensor.add(new MetricName("child.max", "benchmark"), new Max(), config);
+		sensor.add(new MetricName("child.rate", "benchmark"), new Rate());
+		disabled = metrics.sensor("disabled",
+				new MetricConfig().recordLevel(Sensor.RecordingLevel.DEBUG), parentSensors);
+		disabled.add(new MetricName("disabled.avg", "benchmark"), new Avg());
+	}
+
+	@TearDown
+	public void tearDown() {
+		metrics.close();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public void record() {
+		sensor.record(42.0);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void recordContended() {
+		sensor.record(42.0);
+	}
+
+	@Benchmark
+	@Threads(1)
+	public void recordDisabled() {
+		disabled.record(42.0);
+	}
+
+}
@@ -0,0 +1,157 @@
+package io.confluent.common.benchmarks;
+
+import io.confluent.common.metrics.KeyedStat;
+import io.confluent.common.metrics.MeasurableStat;
+import io.confluent.common.metrics.MetricConfig;
+import io.confluent.common.metrics.MetricName;
+import io.confluent.common.metrics.Stat;
+import io.confluent.common.metrics.stats.Avg;
+import io.confluent.common.metrics.stats.Count;
+import io.confluent.common.metrics.stats.DecayingPercentiles;
+import io.confluent.common.metrics.stats.DistinctCount;
+import io.confluent.common.metrics.stats.Frequencies;
+import io.confluent.common.metrics.stats.Frequency;
+import io.confluent.common.metrics.stats.Gauge;
+import io.confluent.common.metrics.stats.Max;
+import io.confluent.common.metrics.stats.Min;
+import io.confluent.common.metrics.stats.Percentile;
+import io.confluent.common.metrics.stats.Percentiles;
+import io.confluent.common.metrics.stats.Rate;
+import io.confluent.common.metrics.stats.SlidingMax;
+import io.confluent.common.metrics.stats.SlidingMin;
+import io.confluent.common.metrics.stats.TopK;
+import io.confluent.common.metrics.stats.Total;
+import io.confluent.common.metrics.stats.Variance;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 统计信号的记录和计算基准测试，不经过Sensor直接调用，带键的信号（TopK、DistinctCount）
+ * 按照带键的方式记录，键在1024个客户端ID中轮换
+ *
+ * @author wanggang
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StatsBenchmark {
+
+	@Param({ "Avg", "Count", "DecayingPercentiles", "DistinctCount", "Frequencies", "Gauge",
+			"Max", "Min", "Percentiles", "Rate", "SlidingMax", "SlidingMin", "TopK", "Total",
+			"Variance" })
+	public String stat;
+
+	private final MetricConfig config = new MetricConfig();
+	private Stat recorder;
+	private MeasurableStat measurable;
+	private KeyedStat keyed;
+	private String[] keys;
+	private int next;
+	private long now;
+	private double value;
+
+	@Setup
+	public void setup() {
+		switch (stat) {
+		case "Avg":
+			recorder = new Avg();
+			break;
+		case "Count":
+			recorder = new Count();
+			break;
+		case "DecayingPercentiles":
+			recorder = new DecayingPercentiles(1028, 0.015, new Percentile(new MetricName("p99",
+					"benchmark"), 99.0));
+			break;
+		case "DistinctCount":
+			recorder = new DistinctCount();
+			break;
+		case "Frequencies":
+			recorder = new Frequencies(10, 0.0, 10.0, new Frequency(new MetricName("f1",
+					"benchmark"), 1.0), new Frequency(new MetricName("f5", "benchmark"), 5.0));
+			break;
+		case "Gauge":
+			recorder = new Gauge();
+			break;
+		case "Max":
+			recorder = new Max();
+			break;
+		case "Min":
+			recorder = new Min();
+			break;
+		case "Percentiles":
+			recorder = new Percentiles(4000, 1000.0, Percentiles.BucketSizing.CONSTANT,
+					new Percentile(new MetricName("p99", "benchmark"), 99.0));
+			break;
+		case "Rate":
+			recorder = new Rate();
+			break;
+		case "SlidingMax":
+			recorder = new SlidingMax();
+			break;
+		case "SlidingMin":
+			recorder = new SlidingMin();
+			break;
+		case "TopK":
+			recorder = new TopK(64, TopK.Mode.SUM, new MetricName("top1", "benchmark"),
+					new MetricName("top2", "benchmark"));
+			break;
+		case "Total":
+			recorder = new Total();
+			break;
+		case "Variance":
+			recorder = new Variance(new MetricName("mean", "benchmark"), new MetricName(
+					"variance", "benchmark"), new MetricName("stddev", "benchmark"));
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown stat: " + stat);
+		}
+		measurable = recorder instanceof MeasurableStat ? (MeasurableStat) recorder : null;
+		keyed = recorder instanceof KeyedStat ? (KeyedStat) recorder : null;
+		keys = new String[1024];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = "client-" + i;
+		}
+		now = System.currentTimeMillis();
+		for (int i = 0; i < 1000; i++) {
+			record(i);
+		}
+	}
+
+	@Benchmark
+	public void record() {
+		value += 1.0;
+		record(value);
+	}
+
+	private void record(double v) {
+		if (keyed != null) {
+			keyed.record(config, keys[next++ & (keys.length - 1)], v, now);
+		} else {
+			recorder.record(config, v, now);
+		}
+	}
+
+	@Benchmark
+	public double measure() {
+		// 组合信号的计算见PercentilesBenchmark
+		return measurable == null ? 0.0 : measurable.measure(config, now);
+	}
+
+}
@@ -0,0 +1,96 @@
+package io.confluent.common.metrics;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 异步记录的后台聚合线程，循环排空所有异步Sensor的缓冲区并将记录应用到信号中
+ *
+ * 没有待处理记录时短暂休眠，由 {@link Metrics} 在第一个异步Sensor创建时启动，关闭仓库时停止。
+ * 某个Sensor处理记录时出现异常只记录日志，不影响其他Sensor，线程继续运行。
+ *
+ * @author wanggang
+ *
+ */
+final class AsyncAggregator implements Runnable {
+
+	private static final Logger logger = LoggerFactory.getLogger(AsyncAggregator.class);
+
+	// 空闲时的休眠时间
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+	// 关闭时等待线程退出的时间
+	private static final long CLOSE_TIMEOUT_MS = 5000;
+
+	// 异步Sensor列表
+	private final List<Sensor> sensors;
+	private final Thread thread;
+	private volatile boolean running;
+
+	AsyncAggregator() {
+		this.sensors = new CopyOnWriteArrayList<>();
+		this.thread = new Thread(this, "metrics-async-aggregator");
+		this.thread.setDaemon(true);
+		this.running = true;
+	}
+
+	void start() {
+		this.thread.start();
+	}
+
+	void register(Sensor sensor) {
+		this.sensors.add(sensor);
+	}
+
+	@Override
+	public void run() {
+		while (running) {
+			if (drainAll() == 0) {
+				LockSupport.parkNanos(IDLE_PARK_NANOS);
+			}
+		}
+		// 退出前处理剩余记录
+		drainAll();
+	}
+
+	private int drainAll() {
+		int drained = 0;
+		for (Sensor sensor : sensors) {
+			try {
+				drained += sensor.flush();
+			} catch (RuntimeException e) {
+				logger.error("Error flushing async sensor " + sensor.name() + ": ", e);
+			}
+		}
+		return drained;
+	}
+
+	/**
+	 * 所有异步Sensor因缓冲区满而丢弃的记录数
+	 */
+	long droppedRecords() {
+		long dropped = 0;
+		for (Sensor sensor : sensors) {
+			dropped += sensor.droppedRecords();
+		}
+		return dropped;
+	}
+
+	/**
+	 * 停止线程，等待剩余记录处理完成
+	 */
+	void close() {
+		this.running = false;
+		LockSupport.unpark(thread);
+		try {
+			thread.join(CLOSE_TIMEOUT_MS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
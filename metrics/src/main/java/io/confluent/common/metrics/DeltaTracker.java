@@ -0,0 +1,111 @@
+package io.confluent.common.metrics;
+
+import io.confluent.common.utils.Time;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 增量报告跟踪器，推送型Reporter每次只获取上次快照之后变化过的Metric
+ *
+ * 属于Sensor的Metric在Sensor有新的记录后视为变化，新注册的Metric视为变化，
+ * 直接注册的Metric（例如Gauge）无法判断是否变化，每次都返回。
+ * 基于时间窗口的信号（例如比率）在没有记录时也会随窗口过期变化，所以每隔一段时间返回全部Metric。
+ * 已经删除的Metric只在全量刷新时、并且期间仓库删除过Metric才清理，增量调用不遍历跟踪的版本号。
+ *
+ * 每个Reporter使用各自的跟踪器，跟踪器本身是线程安全的。
+ *
+ * @author wanggang
+ *
+ */
+public final class DeltaTracker {
+
+	// 仓库
+	private final Metrics registry;
+	// 全量刷新间隔，毫秒单位，0表示每次都全量返回
+	private final long fullRefreshMs;
+	// 时钟
+	private final Time time;
+	// 上次快照时每个Metric所属Sensor的版本号，使用数组避免每次装箱
+	private final Map<KafkaMetric, long[]> versions;
+	// 上次全量刷新的时间
+	private long lastFullRefreshMs;
+	// 上次清理时仓库删除Metric的次数
+	private long lastRemovals;
+
+	DeltaTracker(Metrics registry, long fullRefreshMs, Time time) {
+		if (fullRefreshMs < 0) {
+			throw new IllegalArgumentException("Full refresh interval must be non-negative.");
+		}
+		this.registry = registry;
+		this.fullRefreshMs = fullRefreshMs;
+		this.time = time;
+		this.versions = new IdentityHashMap<>();
+		this.lastFullRefreshMs = Long.MIN_VALUE;
+	}
+
+	/**
+	 * 获取上次调用之后变化过的Metric，到达全量刷新时间时返回全部Metric，第一次调用返回全部Metric
+	 *
+	 * @return Metric列表
+	 */
+	public synchronized List<KafkaMetric> changed() {
+		long now = time.milliseconds();
+		boolean full = this.lastFullRefreshMs == Long.MIN_VALUE
+				|| now - this.lastFullRefreshMs >= this.fullRefreshMs;
+		boolean prune = false;
+		if (full) {
+			this.lastFullRefreshMs = now;
+			// 先读取删除次数，清理期间的删除留到下一次全量刷新
+			long removals = registry.removals();
+			prune = removals != this.lastRemovals;
+			this.lastRemovals = removals;
+		}
+		Map<MetricName, KafkaMetric> metrics = registry.metrics();
+		List<KafkaMetric> changed = new ArrayList<>();
+		for (KafkaMetric metric : metrics.values()) {
+			Sensor sensor = metric.sensor();
+			if (sensor == null) {
+				changed.add(metric);
+				continue;
+			}
+			long version = sensor.version();
+			long[] last = this.versions.get(metric);
+			if (last == null) {
+				this.versions.put(metric, new long[] { version });
+				changed.add(metric);
+			} else if (last[0] != version) {
+				last[0] = version;
+				changed.add(metric);
+			} else if (full) {
+				changed.add(metric);
+			}
+		}
+		if (prune && this.versions.size() > 0) {
+			// 清理已经删除的Metric
+			Map<KafkaMetric, Boolean> current = new IdentityHashMap<>();
+			for (KafkaMetric metric : metrics.values()) {
+				current.put(metric, Boolean.TRUE);
+			}
+			this.versions.keySet().retainAll(current.keySet());
+		}
+		return changed;
+	}
+
+	/**
+	 * 跟踪版本号的Metric数量
+	 */
+	synchronized int tracked() {
+		return this.versions.size();
+	}
+
+	/**
+	 * 下一次调用 {@link #changed()} 返回全部Metric，例如Reporter重新连接之后
+	 */
+	public synchronized void forceFullRefresh() {
+		this.lastFullRefreshMs = Long.MIN_VALUE;
+	}
+
+}
@@ -0,0 +1,465 @@
+package io.confluent.common.metrics;
+
+import io.confluent.common.metrics.exceptions.MetricsException;
+import io.confluent.common.utils.Time;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * 内嵌的HTTP报告器，以JSON格式提供仓库中的Metric
+ *
+ * <pre>
+ * GET /metrics?group=producer-metrics&amp;tag=client-id:c1
+ * {"metrics":[{"name":"...","group":"...","description":"...","tags":{...},"value":1.0},...]}
+ * </pre>
+ *
+ * 支持的过滤参数：group、groupPrefix、tag=键:值、tagPrefix=键:前缀，多个条件同时满足，
+ * 通过 {@link Metrics#query(MetricQuery)} 的索引查找。
+ *
+ * 响应直接写入输出流：每个Metric的名称部分在第一次输出时编码为字节并缓存，
+ * 之后每次请求只追加数值，数值按照15位有效数字直接写成字节，经过一个复用的缓冲区分块发送，
+ * 不拼接字符串。
+ *
+ * ETag由仓库结构版本、匹配的Metric所属Sensor的版本号之和以及时间段组成，请求带有相同的
+ * If-None-Match时返回304。直接注册的Metric（例如Gauge）和没有记录时随窗口过期变化的信号
+ * 无法通过版本号判断，所以ETag最长只在一个时间段内有效。
+ *
+ * 请求在HTTP服务的分发线程中串行处理。
+ *
+ * @author wanggang
+ *
+ */
+public class HttpReporter implements MetricsReporter, MetricsRemovalListener {
+
+	private static final Logger logger = LoggerFactory.getLogger(HttpReporter.class);
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final byte[] HEAD = "{\"metrics\":[".getBytes(UTF_8);
+	private static final byte[] TAIL = "]}".getBytes(UTF_8);
+	private static final byte[] NULL = "null".getBytes(UTF_8);
+	// 整数形式输出的最大绝对值，超过后double不再能精确表示所有整数
+	private static final double MAX_EXACT = 1e15;
+	// 非整数输出的有效数字位数，double可以精确往返15位十进制数
+	private static final int SIGNIFICANT_DIGITS = 15;
+	// 最小的15位数
+	private static final double MIN_MANTISSA = 1e14;
+	// double的最大十进制指数
+	private static final int MAX_EXPONENT = 308;
+
+	// 仓库
+	private final Metrics registry;
+	// HTTP服务
+	private final HttpServer server;
+	// 时钟
+	private final Time time;
+	// ETag的最长有效时间段，毫秒单位
+	private final long etagPeriodMs;
+	// 仓库结构版本，Metric添加或者删除时加1
+	private final AtomicLong structureVersion;
+	// 每个Metric名称部分的JSON字节
+	private final ConcurrentMap<MetricName, byte[]> prefixes;
+	// 复用的输出缓冲区
+	private final byte[] buffer;
+	private int position;
+	// 数字转换使用的缓冲区
+	private final byte[] digits;
+	// 当前响应的输出流
+	private OutputStream out;
+
+	/**
+	 * @param registry  仓库
+	 * @param address   监听地址，端口为0时自动分配
+	 */
+	public HttpReporter(Metrics registry, InetSocketAddress address) {
+		this(registry, address, "/metrics", 10, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * @param registry     仓库
+	 * @param address      监听地址，端口为0时自动分配
+	 * @param path         服务路径
+	 * @param etagPeriod   ETag的最长有效时间
+	 * @param unit         时间单位
+	 */
+	public HttpReporter(Metrics registry, InetSocketAddress address, String path,
+			long etagPeriod, TimeUnit unit) {
+		this.registry = registry;
+		this.time = registry.time();
+		this.etagPeriodMs = Math.max(1, TimeUnit.MILLISECONDS.convert(etagPeriod, unit));
+		this.structureVersion = new AtomicLong(0);
+		this.prefixes = new ConcurrentHashMap<>();
+		this.buffer = new byte[8192];
+		this.digits = new byte[20];
+		try {
+			this.server = HttpServer.create(address, 0);
+		} catch (IOException e) {
+			throw new MetricsException("Error starting HTTP reporter on " + address, e);
+		}
+		this.server.createContext(path, new MetricsHandler(path));
+	}
+
+	@Override
+	public void configure(Map<String, ?> configs) {
+		// 配置通过构造函数传入
+	}
+
+	@Override
+	public void init(List<KafkaMetric> metrics) {
+		this.structureVersion.incrementAndGet();
+		this.server.start();
+	}
+
+	@Override
+	public void metricChange(KafkaMetric metric) {
+		this.prefixes.remove(metric.metricName());
+		this.structureVersion.incrementAndGet();
+	}
+
+	@Override
+	public void metricRemoval(KafkaMetric metric) {
+		this.prefixes.remove(metric.metricName());
+		this.structureVersion.incrementAndGet();
+	}
+
+	@Override
+	public void close() {
+		this.server.stop(0);
+	}
+
+	/**
+	 * 实际监听的地址
+	 */
+	public InetSocketAddress address() {
+		return this.server.getAddress();
+	}
+
+	/**
+	 * 计算一组Metric的ETag
+	 */
+	private String etag(List<KafkaMetric> metrics, long structure) {
+		long versions = 0;
+		for (int i = 0; i < metrics.size(); i++) {
+			Sensor sensor = metrics.get(i).sensor();
+			if (sensor != null) {
+				versions += sensor.version();
+			}
+		}
+		long period = time.milliseconds() / etagPeriodMs;
+		return "\"" + Long.toHexString(structure) + "-" + Long.toHexString(versions) + "-"
+				+ Long.toHexString(period) + "\"";
+	}
+
+	/**
+	 * 解析过滤参数
+	 *
+	 * @param rawQuery  URL中的查询字符串
+	 * @return 查询条件，没有参数时返回null
+	 */
+	private static MetricQuery query(String rawQuery) throws UnsupportedEncodingException {
+		if (rawQuery == null || rawQuery.isEmpty()) {
+			return null;
+		}
+		MetricQuery query = new MetricQuery();
+		for (String param : rawQuery.split("&")) {
+			int eq = param.indexOf('=');
+			if (eq < 0) {
+				throw new IllegalArgumentException("Missing value for parameter " + param);
+			}
+			String key = URLDecoder.decode(param.substring(0, eq), "UTF-8");
+			String value = URLDecoder.decode(param.substring(eq + 1), "UTF-8");
+			if (key.equals("group")) {
+				query.group(value);
+			} else if (key.equals("groupPrefix")) {
+				query.groupPrefix(value);
+			} else if (key.equals("tag") || key.equals("tagPrefix")) {
+				int colon = value.indexOf(':');
+				if (colon < 0) {
+					throw new IllegalArgumentException("Tag filter must be key:value");
+				}
+				if (key.equals("tag")) {
+					query.tag(value.substring(0, colon), value.substring(colon + 1));
+				} else {
+					query.tagPrefix(value.substring(0, colon), value.substring(colon + 1));
+				}
+			} else {
+				throw new IllegalArgumentException("Unknown parameter " + key);
+			}
+		}
+		return query;
+	}
+
+	/**
+	 * 输出所有Metric
+	 */
+	private void writeMetrics(List<KafkaMetric> metrics) throws IOException {
+		write(HEAD);
+		for (int i = 0; i < metrics.size(); i++) {
+			KafkaMetric metric = metrics.get(i);
+			if (i > 0) {
+				write(',');
+			}
+			write(prefix(metric.metricName()));
+			writeNumber(metric.value());
+			write('}');
+		}
+		write(TAIL);
+		flush();
+	}
+
+	/**
+	 * Metric名称部分的JSON字节，从开始的大括号到 "value":
+	 */
+	private byte[] prefix(MetricName metricName) {
+		byte[] prefix = this.prefixes.get(metricName);
+		if (prefix == null) {
+			StringBuilder json = new StringBuilder(128);
+			json.append("{\"name\":");
+			quote(json, metricName.name());
+			json.append(",\"group\":");
+			quote(json, metricName.group());
+			json.append(",\"description\":");
+			quote(json, metricName.description());
+			json.append(",\"tags\":{");
+			boolean first = true;
+			for (Map.Entry<String, String> tag : metricName.tags().entrySet()) {
+				if (!first) {
+					json.append(',');
+				}
+				quote(json, tag.getKey());
+				json.append(':');
+				quote(json, tag.getValue());
+				first = false;
+			}
+			json.append("},\"value\":");
+			prefix = json.toString().getBytes(UTF_8);
+			this.prefixes.put(metricName, prefix);
+		}
+		return prefix;
+	}
+
+	private static void quote(StringBuilder json, String s) {
+		json.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				json.append('\\').append(c);
+			} else if (c < 0x20) {
+				json.append(String.format("\\u%04x", (int) c));
+			} else {
+				json.append(c);
+			}
+		}
+		json.append('"');
+	}
+
+	/**
+	 * 输出数值，整数直接转换为数字字节，NaN和无穷输出为null，都不创建字符串
+	 */
+	private void writeNumber(double value) throws IOException {
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			write(NULL);
+		} else if (value == Math.rint(value) && Math.abs(value) < MAX_EXACT) {
+			writeLong((long) value);
+		} else {
+			writeDouble(value);
+		}
+	}
+
+	/**
+	 * 按照15位有效数字输出非整数或者很大的数，去掉末尾的0，
+	 * 十进制指数在 [-5, 15) 之间时输出普通小数，否则输出科学计数法
+	 */
+	private void writeDouble(double value) throws IOException {
+		if (value < 0) {
+			write('-');
+			value = -value;
+		}
+		int exponent = (int) Math.floor(Math.log10(value));
+		// 缩放到15位整数，很小的数先乘1e100，避免10的幂次溢出为无穷
+		int shift = SIGNIFICANT_DIGITS - 1 - exponent;
+		double scaled = value;
+		while (shift > 300) {
+			scaled *= 1e100;
+			shift -= 100;
+		}
+		scaled = shift >= 0 ? scaled * Math.pow(10, shift) : scaled / Math.pow(10, -shift);
+		if (scaled < MIN_MANTISSA) {
+			// log10的舍入误差
+			scaled *= 10;
+			exponent--;
+		}
+		// 最大指数时向零截断，避免向上舍入后超过Double.MAX_VALUE被解析为无穷
+		long mantissa = exponent == MAX_EXPONENT ? (long) scaled : Math.round(scaled);
+		if (mantissa >= 10 * (long) MIN_MANTISSA) {
+			mantissa /= 10;
+			exponent++;
+		}
+		int n = SIGNIFICANT_DIGITS;
+		while (n > 1 && mantissa % 10 == 0) {
+			mantissa /= 10;
+			n--;
+		}
+		for (int i = n - 1; i >= 0; i--) {
+			digits[i] = (byte) ('0' + mantissa % 10);
+			mantissa /= 10;
+		}
+		if (exponent >= 0 && exponent < SIGNIFICANT_DIGITS) {
+			for (int i = 0; i <= exponent; i++) {
+				write(i < n ? digits[i] : '0');
+			}
+			if (n > exponent + 1) {
+				write('.');
+				for (int i = exponent + 1; i < n; i++) {
+					write(digits[i]);
+				}
+			}
+		} else if (exponent < 0 && exponent >= -5) {
+			write('0');
+			write('.');
+			for (int i = exponent + 1; i < 0; i++) {
+				write('0');
+			}
+			for (int i = 0; i < n; i++) {
+				write(digits[i]);
+			}
+		} else {
+			write(digits[0]);
+			if (n > 1) {
+				write('.');
+				for (int i = 1; i < n; i++) {
+					write(digits[i]);
+				}
+			}
+			write('E');
+			writeLong(exponent);
+		}
+	}
+
+	private void writeLong(long value) throws IOException {
+		if (value < 0) {
+			write('-');
+			value = -value;
+		}
+		int n = 0;
+		do {
+			digits[n++] = (byte) ('0' + value % 10);
+			value /= 10;
+		} while (value > 0);
+		while (n > 0) {
+			write(digits[--n]);
+		}
+	}
+
+	private void write(int b) throws IOException {
+		if (position == buffer.length) {
+			flush();
+		}
+		buffer[position++] = (byte) b;
+	}
+
+	private void write(byte[] bytes) throws IOException {
+		if (bytes.length > buffer.length - position) {
+			flush();
+			if (bytes.length > buffer.length) {
+				out.write(bytes);
+				return;
+			}
+		}
+		System.arraycopy(bytes, 0, buffer, position, bytes.length);
+		position += bytes.length;
+	}
+
+	private void flush() throws IOException {
+		if (position > 0) {
+			out.write(buffer, 0, position);
+			position = 0;
+		}
+	}
+
+	/**
+	 * 处理Metric请求
+	 */
+	private class MetricsHandler implements HttpHandler {
+
+		// 服务路径
+		private final String path;
+
+		private MetricsHandler(String path) {
+			this.path = path;
+		}
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				String method = exchange.getRequestMethod();
+				if (!exchange.getRequestURI().getPath().equals(path)) {
+					exchange.sendResponseHeaders(404, -1);
+					return;
+				}
+				if (!method.equals("GET") && !method.equals("HEAD")) {
+					exchange.sendResponseHeaders(405, -1);
+					return;
+				}
+				MetricQuery query;
+				try {
+					query = query(exchange.getRequestURI().getRawQuery());
+				} catch (IllegalArgumentException e) {
+					exchange.sendResponseHeaders(400, -1);
+					return;
+				}
+				// 先读取结构版本，期间的结构变化会让下一次请求得到新的ETag
+				long structure = structureVersion.get();
+				List<KafkaMetric> metrics = query == null ? new ArrayList<>(registry.metrics()
+						.values()) : registry.query(query);
+				String etag = etag(metrics, structure);
+				exchange.getResponseHeaders().set("ETag", etag);
+				exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+				if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+					exchange.sendResponseHeaders(304, -1);
+					return;
+				}
+				exchange.getResponseHeaders().set("Content-Type",
+						"application/json; charset=utf-8");
+				if (method.equals("HEAD")) {
+					exchange.sendResponseHeaders(200, -1);
+					return;
+				}
+				exchange.sendResponseHeaders(200, 0);
+				out = exchange.getResponseBody();
+				position = 0;
+				writeMetrics(metrics);
+			} catch (IOException e) {
+				logger.debug("Error writing metrics response: {}", e.getMessage());
+			} catch (RuntimeException e) {
+				logger.error("Error serving metrics: ", e);
+				if (exchange.getResponseCode() < 0) {
+					exchange.sendResponseHeaders(500, -1);
+				}
+			} finally {
+				out = null;
+				exchange.close();
+			}
+		}
+
+	}
+
+}
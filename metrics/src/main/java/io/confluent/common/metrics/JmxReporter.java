@@ -30,7 +30,7 @@ import org.slf4j.LoggerFactory;
  * @author wanggang
  *
  */
-public class JmxReporter implements MetricsReporter {
+public class JmxReporter implements MetricsReporter, MetricsRemovalListener {
 
 	private static final Logger logger = LoggerFactory.getLogger(JmxReporter.class);
 
@@ -82,6 +82,25 @@ public class JmxReporter implements MetricsReporter {
 		}
 	}
 
+	@Override
+	public void metricRemoval(KafkaMetric metric) {
+		synchronized (lock) {
+			MetricName metricName = metric.metricName();
+			String mBeanName = getMBeanName(metricName);
+			KafkaMbean mbean = this.mbeans.get(mBeanName);
+			if (mbean == null) {
+				return;
+			}
+			mbean.removeAttribute(metricName.name());
+			if (mbean.metrics.isEmpty()) {
+				unregister(mbean);
+				this.mbeans.remove(mBeanName);
+			} else {
+				reregister(mbean);
+			}
+		}
+	}
+
 	/**
 	 * 添加属性信息并返回，如果由KafkaMetric得到的KafkaMbean不存在则添加
 	 *
@@ -197,6 +216,15 @@ public class JmxReporter implements MetricsReporter {
 			this.metrics.put(name, metric);
 		}
 
+		/**
+		 * 删除属性，也就是删除管理的KafkaMetric对象
+		 *
+		 * @param name
+		 */
+		public void removeAttribute(String name) {
+			this.metrics.remove(name);
+		}
+
 		/**
 		 * 根据KafkaMetric名称获取其对应的指标计算值
 		 */
@@ -10,6 +10,9 @@ import io.confluent.common.utils.Time;
  */
 public final class KafkaMetric implements Metric {
 
+	// 乐观读的最大尝试次数，超过后加锁计算
+	private static final int OPTIMISTIC_ATTEMPTS = 4;
+
 	// 指标名称信息
 	private MetricName metricName;
 	// 同步锁
@@ -19,7 +22,9 @@ public final class KafkaMetric implements Metric {
 	// 指标计算对象
 	private final Measurable measurable;
 	// 指标计算配置对象
-	private MetricConfig config;
+	private volatile MetricConfig config;
+	// 缓存的指标值，开启缓存时使用
+	private volatile CachedValue cached;
 
 	KafkaMetric(Object lock, MetricName metricName, Measurable measurable, MetricConfig config,
 			Time time) {
@@ -42,9 +47,102 @@ public final class KafkaMetric implements Metric {
 
 	@Override
 	public double value() {
+		long ttl = this.config.valueCacheTtlMs();
+		long now = time.milliseconds();
+		if (ttl <= 0) {
+			return measure(now);
+		}
+		CachedValue cached = this.cached;
+		if (cached != null && now < cached.expiresMs) {
+			return cached.value;
+		}
+		double value = measure(now);
+		this.cached = new CachedValue(value, now + ttl);
+		return value;
+	}
+
+	/**
+	 * 计算指标值，属于Sensor并且支持乐观读的Metric先在写序号的保护下不加锁计算，
+	 * 序号变化（并发记录）时重试，多次失败或者需要清理过期样本时再加锁计算
+	 *
+	 * <p> 乐观读读取的是普通字段，正确性由序号保证：写者用原子递增开始修改、volatile写结束修改，
+	 *  读者用写入相同值的CAS校验序号（见 {@link Sensor#validate(long)}），
+	 *  校验通过时读到的值都来自最近一次结束的修改。并发修改时计算可能抛出异常，
+	 *  只有校验失败时才重试，校验通过时异常直接抛出。
+	 *
+	 * @param now 当前时间
+	 */
+	private double measure(long now) {
+		Sensor sensor = sensor();
+		if (sensor != null && this.measurable instanceof OptimisticMeasurable) {
+			OptimisticMeasurable optimistic = (OptimisticMeasurable) this.measurable;
+			MetricConfig config = this.config;
+			for (int i = 0; i < OPTIMISTIC_ATTEMPTS; i++) {
+				long sequence = sensor.sequence();
+				if ((sequence & 1) != 0) {
+					continue;
+				}
+				double value;
+				try {
+					if (!optimistic.peekable(config, now)) {
+						break;
+					}
+					value = optimistic.peek(config, now);
+				} catch (RuntimeException e) {
+					if (sensor.validate(sequence)) {
+						throw e;
+					}
+					// 并发修改导致读到不一致的样本列表，重试
+					continue;
+				}
+				if (sensor.validate(sequence)) {
+					return value;
+				}
+			}
+		}
 		synchronized (this.lock) {
-			return value(time.milliseconds());
+			if (sensor == null) {
+				return value(now);
+			}
+			// 加锁计算可能清理过期样本，同样需要让乐观读者感知
+			sensor.beginWrite();
+			try {
+				return value(now);
+			} finally {
+				sensor.endWrite();
+			}
+		}
+	}
+
+	/**
+	 * 所属的Sensor，直接通过 {@link Metrics#addMetric(MetricName, Measurable)} 注册的Metric返回null
+	 */
+	Sensor sensor() {
+		return this.lock instanceof Sensor ? (Sensor) this.lock : null;
+	}
+
+	/**
+	 * 估计Metric对象和名称占用的字节数，属于Sensor的信号由Sensor统计，这里只计算包装对象，
+	 * 直接注册的Metric同时计算锁对象和Measurable
+	 */
+	long estimatedBytes() {
+		long bytes = SizeEstimable.OBJECT_HEADER + 6 * SizeEstimable.REFERENCE
+				+ this.metricName.estimatedBytes();
+		if (this.cached != null) {
+			bytes += SizeEstimable.OBJECT_HEADER + 16;
 		}
+		if (sensor() != null) {
+			if (!(this.measurable instanceof Stat)) {
+				bytes += SizeEstimable.OBJECT_HEADER + 16;
+			}
+		} else {
+			synchronized (this.lock) {
+				bytes += SizeEstimable.OBJECT_HEADER;
+				bytes += this.measurable instanceof SizeEstimable ? ((SizeEstimable) this.measurable)
+						.estimatedBytes() : SizeEstimable.OBJECT_HEADER;
+			}
+		}
+		return bytes;
 	}
 
 	/**
@@ -65,7 +163,27 @@ public final class KafkaMetric implements Metric {
 	public void config(MetricConfig config) {
 		synchronized (lock) {
 			this.config = config;
+			this.cached = null;
 		}
 	}
 
+	/**
+	 * 不可变的缓存值，通过volatile字段发布
+	 *
+	 * @author wanggang
+	 *
+	 */
+	private static final class CachedValue {
+
+		private final double value;
+		// 过期时间
+		private final long expiresMs;
+
+		private CachedValue(double value, long expiresMs) {
+			this.value = value;
+			this.expiresMs = expiresMs;
+		}
+
+	}
+
 }
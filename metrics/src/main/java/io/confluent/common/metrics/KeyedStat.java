@@ -0,0 +1,24 @@
+package io.confluent.common.metrics;
+
+/**
+ * 带键的量化指标信号，每条记录除了数值外还带有一个键，例如客户端ID
+ *
+ * 通过 {@link Sensor#record(String, double)} 记录的数据会带上键，
+ * 不带键的记录由实现类自行决定如何处理。
+ *
+ * @author wanggang
+ *
+ */
+public interface KeyedStat extends Stat {
+
+	/**
+	 * 记录带键的数据
+	 *
+	 * @param config 指标使用的配置
+	 * @param key    记录的键
+	 * @param value  需要记录的值
+	 * @param timeMs 记录产生的时间，POSIX时间格式，毫秒单位
+	 */
+	public void record(MetricConfig config, String key, double value, long timeMs);
+
+}
@@ -0,0 +1,23 @@
+package io.confluent.common.metrics;
+
+/**
+ * 可以直接记录整数的量化指标信号，例如纳秒延迟、字节数、计数
+ *
+ * 通过 {@link Sensor#record(long)} 记录的数据对实现该接口的信号不做浮点转换，
+ * 其他信号按照普通记录处理。
+ *
+ * @author wanggang
+ *
+ */
+public interface LongStat extends Stat {
+
+	/**
+	 * 记录整数数据
+	 *
+	 * @param config 指标使用的配置
+	 * @param value  需要记录的值
+	 * @param timeMs 记录产生的时间，POSIX时间格式，毫秒单位
+	 */
+	public void record(MetricConfig config, long value, long timeMs);
+
+}
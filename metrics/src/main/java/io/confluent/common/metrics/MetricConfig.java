@@ -20,6 +20,20 @@ public class MetricConfig {
 	private long timeWindowMs;
 	// 时间单位
 	private TimeUnit unit;
+	// 时间窗口是否按纪元时间对齐，默认从第一个事件开始
+	private boolean alignWindows;
+	// 异步记录缓冲区容量，0表示同步记录
+	private int asyncCapacity;
+	// 异步缓冲区满时的处理策略
+	private OverflowPolicy overflowPolicy;
+	// 采样率，每N个事件记录1个，1表示全部记录
+	private int samplingRate;
+	// 采样时极值信号是否仍然逐条记录
+	private boolean exactExtremes;
+	// 记录级别
+	private Sensor.RecordingLevel recordLevel;
+	// Metric值的缓存时间，0表示不缓存
+	private long valueCacheTtlMs;
 
 	public MetricConfig() {
 		super();
@@ -28,6 +42,13 @@ public class MetricConfig {
 		this.eventWindow = Long.MAX_VALUE;
 		this.timeWindowMs = TimeUnit.MILLISECONDS.convert(30, TimeUnit.SECONDS);
 		this.unit = TimeUnit.SECONDS;
+		this.alignWindows = false;
+		this.asyncCapacity = 0;
+		this.overflowPolicy = OverflowPolicy.DROP;
+		this.samplingRate = 1;
+		this.exactExtremes = true;
+		this.recordLevel = Sensor.RecordingLevel.INFO;
+		this.valueCacheTtlMs = 0;
 	}
 
 	public Quota quota() {
@@ -69,6 +90,111 @@ public class MetricConfig {
 		return this;
 	}
 
+	public boolean alignWindows() {
+		return alignWindows;
+	}
+
+	/**
+	 * 时间窗口按纪元时间对齐，窗口起点为 floor(now / timeWindowMs) * timeWindowMs，
+	 * 不同节点、不同Sensor的同一窗口可以直接合并
+	 */
+	public MetricConfig alignWindows(boolean alignWindows) {
+		this.alignWindows = alignWindows;
+		return this;
+	}
+
+	public int asyncCapacity() {
+		return asyncCapacity;
+	}
+
+	public OverflowPolicy overflowPolicy() {
+		return overflowPolicy;
+	}
+
+	/**
+	 * 异步记录，记录只写入无锁环形缓冲区，由后台聚合线程应用到信号中，
+	 * 越界检查也在后台进行，越界时不会向记录方抛出异常。带键的记录仍然同步处理。
+	 *
+	 * @param capacity  缓冲区容量，向上取整为2的幂，0表示同步记录
+	 * @param policy    缓冲区满时的处理策略
+	 */
+	public MetricConfig asyncRecording(int capacity, OverflowPolicy policy) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("Async capacity must be non-negative.");
+		}
+		if (policy == null) {
+			throw new IllegalArgumentException("Overflow policy must not be null.");
+		}
+		this.asyncCapacity = capacity;
+		this.overflowPolicy = policy;
+		return this;
+	}
+
+	public int samplingRate() {
+		return samplingRate;
+	}
+
+	/**
+	 * 概率采样，Sensor按照 1/N 的概率记录事件，计数、总和与比率在计算时乘以N还原，
+	 * 平均值和百分比等分布类信号本身是无偏的，不做调整。带键的记录使用相同的采样，
+	 * {@link io.confluent.common.metrics.stats.TopK} 记录时把增量乘以N。
+	 *
+	 * @param samplingRate 每N个事件记录1个，1表示全部记录
+	 */
+	public MetricConfig samplingRate(int samplingRate) {
+		if (samplingRate < 1) {
+			throw new IllegalArgumentException("The sampling rate must be at least 1.");
+		}
+		this.samplingRate = samplingRate;
+		return this;
+	}
+
+	public boolean exactExtremes() {
+		return exactExtremes;
+	}
+
+	/**
+	 * 采样时最大值、最小值信号是否仍然记录每个事件，默认为true
+	 */
+	public MetricConfig exactExtremes(boolean exactExtremes) {
+		this.exactExtremes = exactExtremes;
+		return this;
+	}
+
+	public Sensor.RecordingLevel recordLevel() {
+		return recordLevel;
+	}
+
+	/**
+	 * 记录级别，作为Sensor配置时为Sensor的级别，作为仓库默认配置时同时是仓库的初始级别，默认为INFO
+	 */
+	public MetricConfig recordLevel(Sensor.RecordingLevel recordLevel) {
+		if (recordLevel == null) {
+			throw new IllegalArgumentException("Record level must not be null.");
+		}
+		this.recordLevel = recordLevel;
+		return this;
+	}
+
+	public long valueCacheTtlMs() {
+		return valueCacheTtlMs;
+	}
+
+	/**
+	 * Metric值的缓存时间，缓存期间读取 {@link KafkaMetric#value()} 直接返回上次的结果，不获取Sensor的锁，
+	 * 适合多个Reporter或者监控客户端频繁读取同一个Metric的情况
+	 *
+	 * @param ttl   缓存时间，0表示不缓存
+	 * @param unit  时间单位
+	 */
+	public MetricConfig valueCacheTtl(long ttl, TimeUnit unit) {
+		if (ttl < 0) {
+			throw new IllegalArgumentException("Value cache TTL must be non-negative.");
+		}
+		this.valueCacheTtlMs = TimeUnit.MILLISECONDS.convert(ttl, unit);
+		return this;
+	}
+
 	public TimeUnit timeUnit() {
 		return unit;
 	}
@@ -78,4 +204,17 @@ public class MetricConfig {
 		return this;
 	}
 
+	/**
+	 * 异步缓冲区满时的处理策略
+	 *
+	 * @author wanggang
+	 *
+	 */
+	public static enum OverflowPolicy {
+		// 丢弃记录并计数
+		DROP,
+		// 退化为同步记录
+		SYNC
+	}
+
 }
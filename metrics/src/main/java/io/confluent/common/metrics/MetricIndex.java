@@ -0,0 +1,131 @@
+package io.confluent.common.metrics;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Metric名称的倒排索引，按照组名和标签键值对索引，注册和删除时增量维护
+ *
+ * 组名和每个标签键下的标签值使用有序Map保存，精确匹配是一次查找，前缀匹配是一次区间查找。
+ * 多个条件时从结果最少的条件开始求交集。非线程安全，由 {@link Metrics} 的锁保护。
+ *
+ * @author wanggang
+ *
+ */
+final class MetricIndex {
+
+	// 组名 -> Metric名称集合
+	private final TreeMap<String, Set<MetricName>> groups;
+	// 标签键 -> 标签值 -> Metric名称集合
+	private final Map<String, TreeMap<String, Set<MetricName>>> tags;
+	// 所有Metric名称
+	private final Set<MetricName> all;
+
+	MetricIndex() {
+		this.groups = new TreeMap<>();
+		this.tags = new HashMap<>();
+		this.all = new HashSet<>();
+	}
+
+	void add(MetricName metricName) {
+		if (!all.add(metricName)) {
+			return;
+		}
+		put(groups, metricName.group(), metricName);
+		for (Map.Entry<String, String> tag : metricName.tags().entrySet()) {
+			TreeMap<String, Set<MetricName>> values = tags.get(tag.getKey());
+			if (values == null) {
+				values = new TreeMap<>();
+				tags.put(tag.getKey(), values);
+			}
+			put(values, tag.getValue(), metricName);
+		}
+	}
+
+	void remove(MetricName metricName) {
+		if (!all.remove(metricName)) {
+			return;
+		}
+		delete(groups, metricName.group(), metricName);
+		for (Map.Entry<String, String> tag : metricName.tags().entrySet()) {
+			TreeMap<String, Set<MetricName>> values = tags.get(tag.getKey());
+			if (values != null) {
+				delete(values, tag.getValue(), metricName);
+				if (values.isEmpty()) {
+					tags.remove(tag.getKey());
+				}
+			}
+		}
+	}
+
+	/**
+	 * 查询满足条件的Metric名称
+	 *
+	 * @param query 查询条件
+	 * @return 新的集合
+	 */
+	Set<MetricName> query(MetricQuery query) {
+		Set<MetricName> result = null;
+		if (query.group() != null) {
+			result = lookup(groups, query.group(), query.isGroupPrefix());
+		}
+		for (MetricQuery.TagFilter filter : query.tags()) {
+			if (result != null && result.isEmpty()) {
+				break;
+			}
+			TreeMap<String, Set<MetricName>> values = tags.get(filter.key);
+			Set<MetricName> matched = values == null ? new HashSet<MetricName>() : lookup(values,
+					filter.value, filter.prefix);
+			result = result == null ? matched : intersect(result, matched);
+		}
+		return result == null ? new HashSet<>(all) : result;
+	}
+
+	private static Set<MetricName> lookup(TreeMap<String, Set<MetricName>> index, String key,
+			boolean prefix) {
+		if (!prefix) {
+			Set<MetricName> names = index.get(key);
+			return names == null ? new HashSet<MetricName>() : new HashSet<>(names);
+		}
+		// 以prefix开头的键在有序Map中是连续的一段
+		Set<MetricName> names = new HashSet<>();
+		for (Map.Entry<String, Set<MetricName>> entry : index.tailMap(key, true).entrySet()) {
+			if (!entry.getKey().startsWith(key)) {
+				break;
+			}
+			names.addAll(entry.getValue());
+		}
+		return names;
+	}
+
+	private static Set<MetricName> intersect(Set<MetricName> a, Set<MetricName> b) {
+		Set<MetricName> small = a.size() <= b.size() ? a : b;
+		Set<MetricName> large = small == a ? b : a;
+		small.retainAll(large);
+		return small;
+	}
+
+	private static void put(Map<String, Set<MetricName>> index, String key, MetricName metricName) {
+		Set<MetricName> names = index.get(key);
+		if (names == null) {
+			names = new HashSet<>();
+			index.put(key, names);
+		}
+		names.add(metricName);
+	}
+
+	private static void delete(Map<String, Set<MetricName>> index, String key,
+			MetricName metricName) {
+		Set<MetricName> names = index.get(key);
+		if (names != null) {
+			names.remove(metricName);
+			if (names.isEmpty()) {
+				index.remove(key);
+			}
+		}
+	}
+
+}
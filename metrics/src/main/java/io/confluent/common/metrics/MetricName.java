@@ -81,7 +81,7 @@ public final class MetricName {
 		Map<String, String> tags = new HashMap<>();
 
 		for (int i = 0; i < (keyValue.length / 2); i++) {
-			tags.put(keyValue[i], keyValue[i + 1]);
+			tags.put(keyValue[2 * i], keyValue[2 * i + 1]);
 		}
 
 		return tags;
@@ -117,6 +117,28 @@ public final class MetricName {
 		return this.name;
 	}
 
+	/**
+	 * 估计名称、组名、描述和属性占用的字节数
+	 */
+	long estimatedBytes() {
+		long bytes = SizeEstimable.OBJECT_HEADER + 4 * SizeEstimable.REFERENCE + 4
+				+ estimatedBytes(name) + estimatedBytes(group) + estimatedBytes(description);
+		// HashMap的对象和表
+		bytes += SizeEstimable.OBJECT_HEADER + 32 + SizeEstimable.ARRAY_HEADER + 2
+				* SizeEstimable.REFERENCE * Math.max(16, tags.size());
+		for (Map.Entry<String, String> tag : tags.entrySet()) {
+			bytes += 32 + estimatedBytes(tag.getKey()) + estimatedBytes(tag.getValue());
+		}
+		return bytes;
+	}
+
+	/**
+	 * 估计字符串占用的字节数，按照每个字符2字节计算
+	 */
+	static long estimatedBytes(String s) {
+		return SizeEstimable.OBJECT_HEADER + 8 + SizeEstimable.ARRAY_HEADER + 2L * s.length();
+	}
+
 	public String group() {
 		return this.group;
 	}
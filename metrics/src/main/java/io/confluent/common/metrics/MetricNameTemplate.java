@@ -0,0 +1,83 @@
+package io.confluent.common.metrics;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Metric名称模板，{@link SensorFamily} 为每个键创建子Sensor时，
+ * 在模板的固定标签上加上键对应的标签生成 {@link MetricName}
+ *
+ * @author wanggang
+ *
+ */
+public final class MetricNameTemplate {
+
+	private final String name;
+	private final String group;
+	private final String description;
+	// 所有实例共有的固定标签
+	private final Map<String, String> tags;
+
+	/**
+	 * @param name         名称
+	 * @param group        组名
+	 * @param description  描述
+	 * @param keyValue     固定标签，按照键值对顺序
+	 */
+	public MetricNameTemplate(String name, String group, String description, String... keyValue) {
+		this(name, group, description, new MetricName(name, group, description, keyValue).tags());
+	}
+
+	/**
+	 * @param name         名称
+	 * @param group        组名
+	 * @param description  描述
+	 * @param tags         固定标签
+	 */
+	public MetricNameTemplate(String name, String group, String description,
+			Map<String, String> tags) {
+		if (name == null || group == null || tags == null) {
+			throw new IllegalArgumentException("Name, group and tags must not be null.");
+		}
+		this.name = name;
+		this.group = group;
+		this.description = description == null ? "" : description;
+		this.tags = Collections.unmodifiableMap(new HashMap<>(tags));
+	}
+
+	public String name() {
+		return name;
+	}
+
+	public String group() {
+		return group;
+	}
+
+	public String description() {
+		return description;
+	}
+
+	public Map<String, String> tags() {
+		return tags;
+	}
+
+	/**
+	 * 生成某个键的Metric名称
+	 *
+	 * @param tagKey  键对应的标签名
+	 * @param key     键
+	 * @return Metric名称信息
+	 */
+	public MetricName instance(String tagKey, String key) {
+		Map<String, String> instanceTags = new HashMap<>(tags);
+		instanceTags.put(tagKey, key);
+		return new MetricName(name, group, description, instanceTags);
+	}
+
+	@Override
+	public String toString() {
+		return "MetricNameTemplate [name=" + name + ", group=" + group + ", tags=" + tags + "]";
+	}
+
+}
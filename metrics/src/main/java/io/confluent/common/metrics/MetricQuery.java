@@ -0,0 +1,143 @@
+package io.confluent.common.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Metric查询条件，按照组和标签精确匹配或者前缀匹配，多个条件之间为与的关系
+ *
+ * <pre>
+ * metrics.query(new MetricQuery().group("producer-metrics").tag("client-id", "X"));
+ * metrics.query(new MetricQuery().tagPrefix("topic", "orders-"));
+ * </pre>
+ *
+ * 没有任何条件时匹配所有Metric。
+ *
+ * @author wanggang
+ *
+ */
+public class MetricQuery {
+
+	// 组名或者组名前缀，为null时不限制
+	private String group;
+	// 组名是否按照前缀匹配
+	private boolean groupPrefix;
+	// 标签条件
+	private final List<TagFilter> tags;
+
+	public MetricQuery() {
+		this.group = null;
+		this.groupPrefix = false;
+		this.tags = new ArrayList<>();
+	}
+
+	/**
+	 * 组名精确匹配
+	 */
+	public MetricQuery group(String group) {
+		if (group == null) {
+			throw new IllegalArgumentException("Group must not be null.");
+		}
+		this.group = group;
+		this.groupPrefix = false;
+		return this;
+	}
+
+	/**
+	 * 组名前缀匹配
+	 */
+	public MetricQuery groupPrefix(String prefix) {
+		if (prefix == null) {
+			throw new IllegalArgumentException("Group prefix must not be null.");
+		}
+		this.group = prefix;
+		this.groupPrefix = true;
+		return this;
+	}
+
+	/**
+	 * 标签值精确匹配
+	 */
+	public MetricQuery tag(String key, String value) {
+		this.tags.add(new TagFilter(key, value, false));
+		return this;
+	}
+
+	/**
+	 * 标签值前缀匹配，前缀为空字符串时只要求存在该标签
+	 */
+	public MetricQuery tagPrefix(String key, String prefix) {
+		this.tags.add(new TagFilter(key, prefix, true));
+		return this;
+	}
+
+	String group() {
+		return group;
+	}
+
+	boolean isGroupPrefix() {
+		return groupPrefix;
+	}
+
+	List<TagFilter> tags() {
+		return Collections.unmodifiableList(tags);
+	}
+
+	/**
+	 * 判断Metric名称是否满足条件
+	 *
+	 * @param metricName Metric名称信息
+	 */
+	public boolean matches(MetricName metricName) {
+		if (group != null && !matches(metricName.group(), group, groupPrefix)) {
+			return false;
+		}
+		for (TagFilter filter : tags) {
+			String value = metricName.tags().get(filter.key);
+			if (value == null || !matches(value, filter.value, filter.prefix)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean matches(String actual, String expected, boolean prefix) {
+		return prefix ? actual.startsWith(expected) : actual.equals(expected);
+	}
+
+	@Override
+	public String toString() {
+		return "MetricQuery [group=" + group + (groupPrefix ? "*" : "") + ", tags=" + tags + "]";
+	}
+
+	/**
+	 * 标签条件
+	 *
+	 * @author wanggang
+	 *
+	 */
+	static final class TagFilter {
+
+		final String key;
+		final String value;
+		// 是否按照前缀匹配
+		final boolean prefix;
+
+		TagFilter(String key, String value, boolean prefix) {
+			if (key == null || value == null) {
+				throw new IllegalArgumentException("Tag key and value must not be null.");
+			}
+			this.key = key;
+			this.value = value;
+			this.prefix = prefix;
+		}
+
+		@Override
+		public String toString() {
+			return key + "=" + value + (prefix ? "*" : "");
+		}
+
+	}
+
+}
@@ -1,14 +1,21 @@
 package io.confluent.common.metrics;
 
+import io.confluent.common.metrics.exceptions.MetricsException;
+import io.confluent.common.metrics.stats.HistogramArena;
 import io.confluent.common.utils.CopyOnWriteMap;
 import io.confluent.common.utils.SystemTime;
 import io.confluent.common.utils.Time;
 import io.confluent.common.utils.Utils;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 批量Sensor和Metric的注册表，即仓库
@@ -36,16 +43,57 @@ import java.util.concurrent.ConcurrentMap;
  */
 public class Metrics {
 
+	// 仓库内部指标所在的保留组，不受基数限制
+	public static final String INTERNAL_GROUP = "metrics-internal";
+	// 折叠后Metric的标签值，保留值，使用该值的Metric会合并到折叠Metric中
+	public static final String OTHER_TAG_VALUE = "__other__";
+	// 折叠Sensor的名称前缀
+	private static final String OVERFLOW_SENSOR_PREFIX = "__overflow:";
+
 	// 计算Metric配置信息
 	private final MetricConfig config;
 	// Metric并发列表
 	private final ConcurrentMap<MetricName, KafkaMetric> metrics;
 	// Snesor并发列表
 	private final ConcurrentMap<String, Sensor> sensors;
+	// 传感器族并发列表
+	private final ConcurrentMap<String, SensorFamily> families;
 	// Metric的Reporter列表
 	private final List<MetricsReporter> reporters;
 	// 时钟，用于Metric中
 	private final Time time;
+	// 全局Metric数量上限，0表示不限制
+	private int maxMetrics;
+	// 每个组的Metric数量上限，0表示不限制
+	private int maxMetricsPerGroup;
+	// 超过上限后的处理策略
+	private CardinalityPolicy cardinalityPolicy;
+	// 受基数限制的Metric数量
+	private int limitedMetrics;
+	// 每个组已注册的Metric数量
+	private final Map<String, Integer> groupSizes;
+	// 折叠后的Metric名称集合，不受基数限制
+	private final Set<MetricName> foldedNames;
+	// 因超过上限被丢弃的Metric数量
+	private volatile long droppedMetrics;
+	// 因超过上限被折叠的Metric数量
+	private volatile long foldedMetrics;
+	// 删除Metric的次数，增量报告据此判断是否需要清理跟踪的Metric
+	private volatile long removals;
+	// 共享的直方图堆外存储区，第一次使用时创建
+	private HistogramArena histogramArena;
+	// 异步记录的后台聚合线程，第一个异步Sensor创建时启动
+	private AsyncAggregator aggregator;
+	// 自身指标，未开启时为null
+	private volatile SelfMetrics selfMetrics;
+	// 当前记录级别，级别更高的Sensor不记录
+	private volatile Sensor.RecordingLevel recordLevel;
+	// 按照组名和标签索引的Metric名称
+	private final MetricIndex index;
+	// 内存预算，单位字节，0表示不限制
+	private volatile long memoryBudget;
+	// 增量维护的内存估计值，Sensor、传感器族和Metric变化时更新，供内存预算检查使用
+	private final AtomicLong accountedBytes;
 
 	/**
 	 * 构造函数，使用默认配置
@@ -83,8 +131,17 @@ public class Metrics {
 		this.config = defaultConfig;
 		this.sensors = new CopyOnWriteMap<String, Sensor>();
 		this.metrics = new CopyOnWriteMap<MetricName, KafkaMetric>();
+		this.families = new CopyOnWriteMap<String, SensorFamily>();
 		this.reporters = Utils.notNull(reporters);
 		this.time = time;
+		this.recordLevel = defaultConfig.recordLevel();
+		this.maxMetrics = 0;
+		this.maxMetricsPerGroup = 0;
+		this.cardinalityPolicy = CardinalityPolicy.REJECT;
+		this.groupSizes = new HashMap<>();
+		this.foldedNames = new HashSet<>();
+		this.index = new MetricIndex();
+		this.accountedBytes = new AtomicLong(0);
 		for (MetricsReporter reporter : reporters) {
 			reporter.init(new ArrayList<KafkaMetric>());
 		}
@@ -130,17 +187,125 @@ public class Metrics {
 	 * @param config  配置
 	 * @param parents 父Sensor数组
 	 * @return Sensor
+	 * @throws MetricsException 需要创建新的Sensor但是超出内存预算
+	 */
+	public Sensor sensor(String name, MetricConfig config, Sensor... parents) {
+		Sensor s = getSensor(name);
+		if (s != null) {
+			return s;
+		}
+		checkMemoryBudget(name);
+		return getOrCreateSensor(name, config, parents);
+	}
+
+	/**
+	 * 获取或者创建一个Sensor，不检查内存预算，供仓库内部创建折叠Sensor和自身指标Sensor使用
 	 */
-	public synchronized Sensor sensor(String name, MetricConfig config, Sensor... parents) {
+	synchronized Sensor getOrCreateSensor(String name, MetricConfig config, Sensor... parents) {
 		Sensor s = getSensor(name);
 		if (s == null) {
 			s = new Sensor(this, name, parents, config == null ? this.config : config, time);
+			if (s.async()) {
+				aggregator().register(s);
+			}
 			this.sensors.put(name, s);
 		}
 
 		return s;
 	}
 
+	/**
+	 * 把所有Metric都被基数限制拒绝或者折叠的Sensor移出仓库，避免错误的标签导致Sensor无限增长
+	 *
+	 * <p> 调用方持有的引用仍然可以记录，折叠的记录通过父Sensor汇总到折叠Sensor，
+	 *  之后用同一名称获取时重新创建。异步Sensor由聚合线程持有，不移出。
+	 *
+	 * @param sensor 没有Metric的Sensor
+	 * @return 是否移出
+	 */
+	synchronized boolean detach(Sensor sensor) {
+		return !sensor.async() && this.sensors.remove(sensor.name(), sensor);
+	}
+
+	/**
+	 * 被移出的Sensor之后成功添加了Metric时放回仓库
+	 *
+	 * @param sensor 被移出的Sensor
+	 * @return 是否放回，同名的Sensor已经重新创建时返回false
+	 */
+	synchronized boolean reattach(Sensor sensor) {
+		return this.sensors.putIfAbsent(sensor.name(), sensor) == null;
+	}
+
+	/**
+	 * 获取或者创建一个传感器族，子Sensor按照键懒创建，数量达到容量后淘汰最久没有记录的键，
+	 * 适合按客户端、主题等实体统计的场景。子Sensor不在 {@link #getSensor(String)} 中出现。
+	 *
+	 * @param name     族名称，唯一
+	 * @param tagKey   键对应的标签名，例如client-id
+	 * @param capacity 子Sensor数量上限
+	 * @param config   子Sensor的配置，为null时使用默认配置
+	 * @param parents  子Sensor的父Sensor数组
+	 * @return 传感器族
+	 */
+	public synchronized SensorFamily sensorFamily(String name, String tagKey, int capacity,
+			MetricConfig config, Sensor... parents) {
+		SensorFamily family = this.families.get(name);
+		if (family == null) {
+			family = new SensorFamily(this, name, tagKey, capacity, config == null ? this.config
+					: config, parents, time);
+			this.families.put(name, family);
+		}
+		return family;
+	}
+
+	/**
+	 * 创建增量报告跟踪器，推送型Reporter通过跟踪器只获取变化过的Metric
+	 *
+	 * @param fullRefresh 全量刷新间隔，0表示每次都全量返回
+	 * @param unit        时间单位
+	 * @return 增量报告跟踪器
+	 */
+	public DeltaTracker deltaTracker(long fullRefresh, TimeUnit unit) {
+		return new DeltaTracker(this, TimeUnit.MILLISECONDS.convert(fullRefresh, unit), time);
+	}
+
+	/**
+	 * 获取或者创建异步聚合线程，创建时注册丢弃记录数的内部Metric
+	 */
+	private AsyncAggregator aggregator() {
+		if (this.aggregator == null) {
+			final AsyncAggregator aggregator = new AsyncAggregator();
+			addMetric(new MetricName("async-records-dropped-total", INTERNAL_GROUP,
+					"The number of async records dropped because the sensor buffer was full."),
+					new Measurable() {
+						@Override
+						public double measure(MetricConfig config, long now) {
+							return aggregator.droppedRecords();
+						}
+					});
+			aggregator.start();
+			this.aggregator = aggregator;
+		}
+		return this.aggregator;
+	}
+
+	/**
+	 * 当前记录级别
+	 */
+	public Sensor.RecordingLevel recordLevel() {
+		return this.recordLevel;
+	}
+
+	/**
+	 * 运行时调整记录级别，已注册的Sensor立即按照新的级别开始或者停止记录，不需要重新注册
+	 *
+	 * @param recordLevel 记录级别
+	 */
+	public void recordLevel(Sensor.RecordingLevel recordLevel) {
+		this.recordLevel = Utils.notNull(recordLevel);
+	}
+
 	/**
 	 * 添加一个Metric，该Metric不会和其他Sensor相关
 	 *
@@ -162,7 +327,259 @@ public class Metrics {
 			Measurable measurable) {
 		KafkaMetric m = new KafkaMetric(new Object(), Utils.notNull(metricName),
 				Utils.notNull(measurable), config == null ? this.config : config, time);
-		registerMetric(m);
+		if (!registerMetric(m)) {
+			overflow(metricName, null, null);
+		}
+	}
+
+	/**
+	 * 设置Metric基数限制，防止错误的标签（例如请求ID）导致Metric无限增长
+	 *
+	 * <p> 超过上限的新Metric按照给定策略处理，已注册的Metric不受影响，
+	 *  {@link #INTERNAL_GROUP} 组中的Metric不计入上限。
+	 *
+	 * @param maxMetrics          全局Metric数量上限，0表示不限制
+	 * @param maxMetricsPerGroup  每个组的Metric数量上限，0表示不限制
+	 * @param policy              超过上限后的处理策略
+	 */
+	public synchronized void cardinalityLimit(int maxMetrics, int maxMetricsPerGroup,
+			CardinalityPolicy policy) {
+		if (maxMetrics < 0 || maxMetricsPerGroup < 0) {
+			throw new IllegalArgumentException("Cardinality limits must be non-negative.");
+		}
+		this.maxMetrics = maxMetrics;
+		this.maxMetricsPerGroup = maxMetricsPerGroup;
+		this.cardinalityPolicy = Utils.notNull(policy);
+		MetricName dropped = new MetricName("metrics-dropped-total", INTERNAL_GROUP,
+				"The number of metrics rejected because of the cardinality limits.");
+		if (!this.metrics.containsKey(dropped)) {
+			addMetric(dropped, new Measurable() {
+				@Override
+				public double measure(MetricConfig config, long now) {
+					return droppedMetrics;
+				}
+			});
+			addMetric(new MetricName("metrics-folded-total", INTERNAL_GROUP,
+					"The number of metrics folded into an overflow metric because of the cardinality limits."),
+					new Measurable() {
+						@Override
+						public double measure(MetricConfig config, long now) {
+							return foldedMetrics;
+						}
+					});
+		}
+	}
+
+	/**
+	 * 因超过上限被丢弃的Metric数量
+	 */
+	public long droppedMetrics() {
+		return this.droppedMetrics;
+	}
+
+	/**
+	 * 因超过上限被折叠的Metric数量
+	 */
+	public long foldedMetrics() {
+		return this.foldedMetrics;
+	}
+
+	/**
+	 * 仓库共享的直方图堆外存储区，传给 {@link io.confluent.common.metrics.stats.Percentiles} 后直方图的桶保存在直接内存中
+	 *
+	 * <p> 第一次调用时创建，同时注册报告已使用堆外字节数的内部Metric，存储区与仓库的生命周期相同。
+	 */
+	public synchronized HistogramArena histogramArena() {
+		if (this.histogramArena == null) {
+			final HistogramArena arena = new HistogramArena();
+			addMetric(new MetricName("off-heap-histogram-bytes", INTERNAL_GROUP,
+					"The number of direct memory bytes reserved for histogram buckets."),
+					new Measurable() {
+						@Override
+						public double measure(MetricConfig config, long now) {
+							return arena.reservedBytes();
+						}
+					});
+			this.histogramArena = arena;
+		}
+		return this.histogramArena;
+	}
+
+	/**
+	 * 设置内存预算，估计的内存占用达到预算后创建新的Sensor（包括传感器族的子Sensor）会失败，
+	 * 已有的Sensor不受影响，继续记录
+	 *
+	 * <p> 预算按照增量维护的估计值检查，每个Sensor在添加信号时以及每个时间窗口第一次记录时
+	 *  重新估计自身，所以与 {@link #estimatedBytes()} 相比最多滞后一个时间窗口。
+	 *
+	 * @param bytes 预算字节数，0表示不限制
+	 */
+	public void memoryBudget(long bytes) {
+		if (bytes < 0) {
+			throw new IllegalArgumentException("Memory budget must be non-negative.");
+		}
+		this.memoryBudget = bytes;
+	}
+
+	public long memoryBudget() {
+		return this.memoryBudget;
+	}
+
+	/**
+	 * 估计仓库占用的堆内存字节数，包括所有Sensor、传感器族以及直接注册的Metric
+	 *
+	 * <p> 不获取仓库的锁，依次获取各个Sensor的锁，结果是近似值，
+	 *  堆外直方图的桶由off-heap-histogram-bytes单独报告。
+	 */
+	public long estimatedBytes() {
+		long bytes = 0;
+		for (Sensor sensor : this.sensors.values()) {
+			bytes += sensor.estimatedBytes();
+		}
+		for (SensorFamily family : this.families.values()) {
+			bytes += family.estimatedBytes();
+		}
+		for (KafkaMetric metric : this.metrics.values()) {
+			bytes += metricBytes(metric);
+		}
+		return bytes;
+	}
+
+	/**
+	 * 仓库为一个Metric额外占用的字节数：列表和索引中的条目，直接注册的Metric还包括Metric自身，
+	 * Sensor的Metric由Sensor统计
+	 */
+	private static long metricBytes(KafkaMetric metric) {
+		long bytes = 3 * (SizeEstimable.OBJECT_HEADER + 16);
+		if (metric.sensor() == null) {
+			bytes += metric.estimatedBytes();
+		}
+		return bytes;
+	}
+
+	/**
+	 * 删除Metric的次数
+	 */
+	long removals() {
+		return this.removals;
+	}
+
+	/**
+	 * 增量维护的内存估计值
+	 */
+	long accountedBytes() {
+		return this.accountedBytes.get();
+	}
+
+	/**
+	 * 累加内存估计值的变化量
+	 *
+	 * @param delta 变化的字节数
+	 */
+	void accounted(long delta) {
+		this.accountedBytes.addAndGet(delta);
+	}
+
+	/**
+	 * 检查内存预算，超出时拒绝创建新的Sensor，与增量维护的估计值比较，不遍历Sensor
+	 *
+	 * @param sensorName 将要创建的Sensor名称
+	 * @throws MetricsException 超出内存预算
+	 */
+	void checkMemoryBudget(String sensorName) {
+		long budget = this.memoryBudget;
+		if (budget <= 0) {
+			return;
+		}
+		long bytes = this.accountedBytes.get();
+		if (bytes >= budget) {
+			throw new MetricsException("Cannot create sensor '" + sensorName
+					+ "': estimated metrics memory of " + bytes
+					+ " bytes has reached the budget of " + budget + " bytes.");
+		}
+	}
+
+	/**
+	 * 开启仓库的自身指标，统计指标库本身的开销，重复调用无影响
+	 *
+	 * <p> 所有Metric位于 {@link #INTERNAL_GROUP} 组中，包括：记录次数比率、记录耗时（采样）、
+	 *  Sensor锁竞争次数（近似值）、越界检查次数、Reporter回调耗时、估计的内存占用，
+	 *  以及每个组的Metric数量。锁竞争和越界检查次数只统计开启之后的记录，未开启时记录路径不做这些统计。
+	 */
+	public synchronized void enableSelfMetrics() {
+		if (this.selfMetrics != null) {
+			return;
+		}
+		SelfMetrics self = new SelfMetrics(this);
+		addMetric(new MetricName("sensor-lock-contention-total", INTERNAL_GROUP,
+				"The approximate number of sensor records that found another thread recording"
+						+ " since self metrics were enabled."),
+				new Measurable() {
+					@Override
+					public double measure(MetricConfig config, long now) {
+						long total = 0;
+						for (Sensor sensor : sensors.values()) {
+							total += sensor.lockContentions();
+						}
+						return total;
+					}
+				});
+		addMetric(new MetricName("quota-evaluations-total", INTERNAL_GROUP,
+				"The number of quota checks performed while recording"
+						+ " since self metrics were enabled."), new Measurable() {
+			@Override
+			public double measure(MetricConfig config, long now) {
+				long total = 0;
+				for (Sensor sensor : sensors.values()) {
+					total += sensor.quotaEvaluations();
+				}
+				return total;
+			}
+		});
+		addMetric(new MetricName("estimated-memory-bytes", INTERNAL_GROUP,
+				"The estimated heap bytes retained by sensors, stats and metrics."),
+				new Measurable() {
+					@Override
+					public double measure(MetricConfig config, long now) {
+						return estimatedBytes();
+					}
+				});
+		for (String group : new ArrayList<>(this.groupSizes.keySet())) {
+			addGroupSizeMetric(group);
+		}
+		this.selfMetrics = self;
+	}
+
+	/**
+	 * 自身指标，未开启时返回null
+	 */
+	SelfMetrics selfMetrics() {
+		return this.selfMetrics;
+	}
+
+	/**
+	 * 注册报告某个组Metric数量的内部Metric
+	 *
+	 * @param group 组名
+	 */
+	private void addGroupSizeMetric(final String group) {
+		addMetric(new MetricName("metric-count", INTERNAL_GROUP,
+				"The number of metrics registered in the group.", "group", group), new Measurable() {
+			@Override
+			public double measure(MetricConfig config, long now) {
+				return groupSize(group);
+			}
+		});
+	}
+
+	/**
+	 * 某个组已注册的Metric数量
+	 *
+	 * @param group 组名
+	 */
+	synchronized int groupSize(String group) {
+		Integer size = this.groupSizes.get(group);
+		return size == null ? 0 : size;
 	}
 
 	/**
@@ -171,7 +588,9 @@ public class Metrics {
 	 * @param reporter 报告器
 	 */
 	public synchronized void addReporter(MetricsReporter reporter) {
+		long start = System.nanoTime();
 		Utils.notNull(reporter).init(new ArrayList<KafkaMetric>(metrics.values()));
+		reported(start);
 		this.reporters.add(reporter);
 	}
 
@@ -179,17 +598,155 @@ public class Metrics {
 	 * 注册Metric，即将Metric添加到Metric中
 	 *
 	 * @param metric KafkaMetric对象
+	 * @return 超过基数限制时返回false，此时Metric未被注册
 	 */
-	synchronized void registerMetric(KafkaMetric metric) {
+	synchronized boolean registerMetric(KafkaMetric metric) {
 		MetricName metricName = metric.metricName();
 		if (this.metrics.containsKey(metricName)) {
+			// 与折叠Metric同名时按照超过上限处理，合并到折叠Metric中
+			if (this.foldedNames.contains(metricName)) {
+				return false;
+			}
 			throw new IllegalArgumentException("A metric named '" + metricName
 					+ "' already exists, " + "can't register another one.");
 		}
+		boolean limited = isLimited(metricName);
+		Integer groupSize = this.groupSizes.get(metricName.group());
+		int size = groupSize == null ? 0 : groupSize;
+		if (limited) {
+			if ((maxMetrics > 0 && limitedMetrics >= maxMetrics)
+					|| (maxMetricsPerGroup > 0 && size >= maxMetricsPerGroup)) {
+				return false;
+			}
+			this.limitedMetrics++;
+		}
+		this.groupSizes.put(metricName.group(), size + 1);
+		if (groupSize == null && this.selfMetrics != null) {
+			addGroupSizeMetric(metricName.group());
+		}
 		this.metrics.put(metricName, metric);
+		this.index.add(metricName);
+		accounted(metricBytes(metric));
+		long start = System.nanoTime();
 		for (MetricsReporter reporter : reporters) {
 			reporter.metricChange(metric);
 		}
+		reported(start);
+		return true;
+	}
+
+	/**
+	 * 开启自身指标时记录Reporter回调耗时
+	 *
+	 * @param startNs 回调开始时间，纳秒
+	 */
+	private void reported(long startNs) {
+		SelfMetrics self = this.selfMetrics;
+		if (self != null && !this.reporters.isEmpty()) {
+			self.reported(System.nanoTime() - startNs);
+		}
+	}
+
+	/**
+	 * 删除一个Metric，并通知实现了 {@link MetricsRemovalListener} 的Reporter
+	 *
+	 * <p> 如果Metric属于某个Sensor，Sensor仍然会向对应的信号记录数据，只是不再对外报告。
+	 *
+	 * @param metricName  Metric名称信息
+	 * @return 被删除的Metric，不存在时返回null
+	 */
+	public synchronized KafkaMetric removeMetric(MetricName metricName) {
+		KafkaMetric metric = this.metrics.remove(Utils.notNull(metricName));
+		if (metric == null) {
+			return null;
+		}
+		this.index.remove(metricName);
+		this.removals++;
+		accounted(-metricBytes(metric));
+		if (isLimited(metricName)) {
+			this.limitedMetrics--;
+		}
+		// 保留数量为0的组，组的自身指标已经注册，不需要重复注册
+		this.groupSizes.put(metricName.group(), groupSize(metricName.group()) - 1);
+		long start = System.nanoTime();
+		for (MetricsReporter reporter : reporters) {
+			if (reporter instanceof MetricsRemovalListener) {
+				((MetricsRemovalListener) reporter).metricRemoval(metric);
+			}
+		}
+		reported(start);
+		return metric;
+	}
+
+	/**
+	 * 按照组名和标签查询Metric，使用倒排索引，不需要遍历所有Metric
+	 *
+	 * @param query 查询条件
+	 * @return 满足条件的Metric列表
+	 */
+	public synchronized List<KafkaMetric> query(MetricQuery query) {
+		Set<MetricName> names = this.index.query(Utils.notNull(query));
+		List<KafkaMetric> result = new ArrayList<>(names.size());
+		for (MetricName name : names) {
+			result.add(this.metrics.get(name));
+		}
+		return result;
+	}
+
+	/**
+	 * 判断Metric是否受基数限制
+	 *
+	 * @param metricName Metric名称信息
+	 */
+	private boolean isLimited(MetricName metricName) {
+		return !INTERNAL_GROUP.equals(metricName.group()) && !foldedNames.contains(metricName);
+	}
+
+	/**
+	 * 处理超过基数限制的Metric
+	 *
+	 * <p> 折叠策略下，将Metric的所有标签值替换为 {@link #OTHER_TAG_VALUE}，
+	 *  同名的折叠Metric共用一个折叠Sensor，调用方把该Sensor作为父Sensor即可将记录汇总进去。
+	 *  没有标签的Metric、组合信号和直接添加的计算器无法折叠，只能丢弃；
+	 *  折叠后的名称已经被普通Metric使用时同样丢弃。
+	 *
+	 * @param metricName  被拒绝的Metric名称信息
+	 * @param stat        被拒绝Metric的统计信号，为null表示不能折叠
+	 * @param config      折叠Metric使用的配置
+	 * @return 折叠Sensor，丢弃时返回null
+	 */
+	synchronized Sensor overflow(MetricName metricName, MeasurableStat stat, MetricConfig config) {
+		if (cardinalityPolicy != CardinalityPolicy.FOLD || stat == null
+				|| metricName.tags().isEmpty()) {
+			this.droppedMetrics++;
+			return null;
+		}
+		Map<String, String> tags = new HashMap<>();
+		for (String key : metricName.tags().keySet()) {
+			tags.put(key, OTHER_TAG_VALUE);
+		}
+		MetricName folded = new MetricName(metricName.name(), metricName.group(),
+				metricName.description(), tags);
+		if (this.metrics.containsKey(folded) && !this.foldedNames.contains(folded)) {
+			this.droppedMetrics++;
+			return null;
+		}
+		this.foldedMetrics++;
+		String sensorName = OVERFLOW_SENSOR_PREFIX + folded;
+		Sensor sensor = getSensor(sensorName);
+		if (sensor == null) {
+			this.foldedNames.add(folded);
+			sensor = getOrCreateSensor(sensorName, config);
+			sensor.add(folded, stat, config);
+		}
+		return sensor;
+	}
+
+	/**
+	 * 仓库使用的时钟
+	 */
+	Time time() {
+		return this.time;
 	}
 
 	/**
@@ -203,9 +760,27 @@ public class Metrics {
 	 * 关闭仓库，不进行Report了
 	 */
 	public void close() {
+		synchronized (this) {
+			if (this.aggregator != null) {
+				this.aggregator.close();
+			}
+		}
 		for (MetricsReporter reporter : this.reporters) {
 			reporter.close();
 		}
 	}
 
+	/**
+	 * 超过Metric基数限制后的处理策略
+	 *
+	 * @author wanggang
+	 *
+	 */
+	public static enum CardinalityPolicy {
+		// 直接丢弃新的Metric
+		REJECT,
+		// 将新的Metric折叠到标签值为other的Metric中
+		FOLD
+	}
+
 }
@@ -0,0 +1,21 @@
+package io.confluent.common.metrics;
+
+/**
+ * 可选的Metric删除监听接口，{@link MetricsReporter} 同时实现该接口时，
+ * Metric从仓库中删除后会收到通知
+ *
+ * 单独定义是为了不给已有的Reporter实现增加必须实现的方法。
+ *
+ * @author wanggang
+ *
+ */
+public interface MetricsRemovalListener {
+
+	/**
+	 * 指标删除，当一个Metric从仓库中删除时调用
+	 *
+	 * @param metric Kafka指标
+	 */
+	public void metricRemoval(KafkaMetric metric);
+
+}
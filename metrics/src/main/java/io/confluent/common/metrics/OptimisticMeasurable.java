@@ -0,0 +1,32 @@
+package io.confluent.common.metrics;
+
+/**
+ * 支持乐观读的计算器，读取时不获取Sensor的锁
+ *
+ * {@link KafkaMetric#value()} 先记录Sensor的写序号，调用 {@link #peek(MetricConfig, long)}
+ * 计算，序号没有变化时直接返回结果，否则重试，多次失败后退回到加锁计算。
+ * 实现类必须保证 {@link #peekable(MetricConfig, long)} 返回true时计算过程不修改任何状态，
+ * 并且在并发修改下读到不一致的数据不会导致死循环。
+ *
+ * @author wanggang
+ *
+ */
+public interface OptimisticMeasurable extends Measurable {
+
+	/**
+	 * 当前是否可以不修改状态地计算，例如采样信号没有过期的样本
+	 *
+	 * @param config 配置
+	 * @param now    当前时间
+	 */
+	public boolean peekable(MetricConfig config, long now);
+
+	/**
+	 * 不修改状态地计算指标值，只在 {@link #peekable(MetricConfig, long)} 返回true时调用
+	 *
+	 * @param config 配置
+	 * @param now    当前时间
+	 */
+	public double peek(MetricConfig config, long now);
+
+}
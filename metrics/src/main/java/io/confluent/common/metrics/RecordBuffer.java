@@ -0,0 +1,129 @@
+package io.confluent.common.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 异步记录使用的有界多生产者单消费者环形缓冲区
+ *
+ * 基于Vyukov的有界队列算法：每个槽位有一个序号，生产者通过CAS抢占尾部位置，
+ * 写入数值和时间戳后发布序号，消费者看到序号后读取，全程无锁、不分配对象。
+ * 消费者一侧由调用方持有缓冲区的监视器锁保证单线程。
+ *
+ * @author wanggang
+ *
+ */
+final class RecordBuffer {
+
+	// 槽位序号，等于位置时可写，等于位置+1时可读
+	private final AtomicLongArray sequences;
+	// 槽位中的记录值
+	private final double[] values;
+	// 槽位中的记录时间
+	private final long[] times;
+	private final int mask;
+	// 生产者的下一个写入位置
+	private final AtomicLong tail;
+	// 缓冲区满时丢弃的记录数
+	private final AtomicLong dropped;
+	// 消费者的下一个读取位置，只在消费者锁内访问
+	private long head;
+	// 最近一次poll读出的记录
+	private double polledValue;
+	private long polledTimeMs;
+
+	/**
+	 * @param capacity 容量，向上取整为2的幂
+	 */
+	RecordBuffer(int capacity) {
+		if (capacity < 1 || capacity > (1 << 30)) {
+			throw new IllegalArgumentException("Capacity must be between 1 and 2^30.");
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size <<= 1;
+		}
+		this.sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			this.sequences.set(i, i);
+		}
+		this.values = new double[size];
+		this.times = new long[size];
+		this.mask = size - 1;
+		this.tail = new AtomicLong(0);
+		this.dropped = new AtomicLong(0);
+		this.head = 0;
+	}
+
+	/**
+	 * 写入一条记录，可以被多个线程并发调用
+	 *
+	 * @param value   记录值
+	 * @param timeMs  记录时间
+	 * @return 缓冲区已满时返回false
+	 */
+	boolean offer(double value, long timeMs) {
+		long pos;
+		int index;
+		while (true) {
+			pos = tail.get();
+			index = (int) pos & mask;
+			long diff = sequences.get(index) - pos;
+			if (diff == 0) {
+				if (tail.compareAndSet(pos, pos + 1)) {
+					break;
+				}
+			} else if (diff < 0) {
+				return false;
+			}
+		}
+		values[index] = value;
+		times[index] = timeMs;
+		// 发布槽位，序号的写入对消费者的读取建立happens-before关系
+		sequences.lazySet(index, pos + 1);
+		return true;
+	}
+
+	/**
+	 * 读出一条记录，调用方需持有该缓冲区的锁，读出的记录通过 {@link #value()} 和 {@link #timeMs()} 获取
+	 *
+	 * @return 没有可读记录时返回false
+	 */
+	boolean poll() {
+		int index = (int) head & mask;
+		if (sequences.get(index) != head + 1) {
+			return false;
+		}
+		polledValue = values[index];
+		polledTimeMs = times[index];
+		sequences.lazySet(index, head + mask + 1);
+		head++;
+		return true;
+	}
+
+	double value() {
+		return polledValue;
+	}
+
+	long timeMs() {
+		return polledTimeMs;
+	}
+
+	void drop() {
+		dropped.incrementAndGet();
+	}
+
+	long dropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * 估计缓冲区占用的字节数，三个数组按照容量预分配
+	 */
+	long estimatedBytes() {
+		int size = values.length;
+		return SizeEstimable.OBJECT_HEADER + 48 + 3 * (SizeEstimable.OBJECT_HEADER + 8)
+				+ 3 * (SizeEstimable.ARRAY_HEADER + 8L * size);
+	}
+
+}
@@ -0,0 +1,19 @@
+package io.confluent.common.metrics;
+
+/**
+ * 持有需要归还的外部资源的信号，例如从 {@link io.confluent.common.metrics.stats.HistogramArena}
+ * 切分出的堆外直方图
+ *
+ * Sensor被淘汰时调用 {@link #release()}，资源回到存储区供其他信号复用。
+ *
+ * @author wanggang
+ *
+ */
+public interface Releasable {
+
+	/**
+	 * 归还持有的资源，调用方需持有传感器的锁，之后继续记录时不应再占用需要归还的资源
+	 */
+	public void release();
+
+}
@@ -0,0 +1,81 @@
+package io.confluent.common.metrics;
+
+import io.confluent.common.metrics.stats.Avg;
+import io.confluent.common.metrics.stats.Count;
+import io.confluent.common.metrics.stats.Max;
+import io.confluent.common.metrics.stats.Rate;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 仓库的自身指标，统计指标库本身的开销，所有Metric位于 {@link Metrics#INTERNAL_GROUP} 组中
+ *
+ * 记录耗时按照 1/{@value #SAMPLE_RATE} 的概率采样，记录次数的比率按照采样率放大，
+ * 未被采样的记录只多一次随机数判断。
+ *
+ * @author wanggang
+ *
+ */
+final class SelfMetrics {
+
+	// 记录耗时的采样率
+	static final int SAMPLE_RATE = 64;
+
+	// 记录调用的统计Sensor
+	private final Sensor recordSensor;
+	// Reporter回调的统计Sensor
+	private final Sensor reporterSensor;
+
+	SelfMetrics(Metrics metrics) {
+		String group = Metrics.INTERNAL_GROUP;
+		this.recordSensor = metrics.getOrCreateSensor(group + ":record", null);
+		this.recordSensor.addScaled(new MetricName("record-rate", group,
+				"The number of sensor record calls per second, estimated from sampled calls."),
+				new Rate(new Count()), SAMPLE_RATE);
+		this.recordSensor.add(new MetricName("record-time-avg-ns", group,
+				"The average time in nanoseconds spent applying a record to a sensor's stats."),
+				new Avg());
+		this.recordSensor.add(new MetricName("record-time-max-ns", group,
+				"The max sampled time in nanoseconds spent applying a record to a sensor's stats."),
+				new Max());
+		this.reporterSensor = metrics.getOrCreateSensor(group + ":reporter", null);
+		this.reporterSensor.add(new MetricName("reporter-time-avg-ns", group,
+				"The average time in nanoseconds spent in reporter callbacks."), new Avg());
+		this.reporterSensor.add(new MetricName("reporter-time-max-ns", group,
+				"The max time in nanoseconds spent in reporter callbacks."), new Max());
+	}
+
+	/**
+	 * 当前记录是否被采样
+	 */
+	boolean sample() {
+		return ThreadLocalRandom.current().nextInt(SAMPLE_RATE) == 0;
+	}
+
+	/**
+	 * 是否为自身指标使用的Sensor，这些Sensor的记录不再统计，避免递归
+	 */
+	boolean owns(Sensor sensor) {
+		return sensor == recordSensor || sensor == reporterSensor;
+	}
+
+	/**
+	 * 记录一次被采样的记录耗时
+	 *
+	 * @param nanos   耗时，纳秒
+	 * @param timeMs  当前时间
+	 */
+	void recorded(long nanos, long timeMs) {
+		recordSensor.record(nanos, timeMs);
+	}
+
+	/**
+	 * 记录一次Reporter回调耗时
+	 *
+	 * @param nanos 耗时，纳秒
+	 */
+	void reported(long nanos) {
+		reporterSensor.record(nanos);
+	}
+
+}
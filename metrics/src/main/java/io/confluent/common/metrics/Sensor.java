@@ -1,13 +1,27 @@
 package io.confluent.common.metrics;
 
+import io.confluent.common.metrics.stats.Count;
+import io.confluent.common.metrics.stats.Max;
+import io.confluent.common.metrics.stats.Min;
+import io.confluent.common.metrics.stats.Rate;
+import io.confluent.common.metrics.stats.SlidingExtremum;
+import io.confluent.common.metrics.stats.TopK;
+import io.confluent.common.metrics.stats.Total;
 import io.confluent.common.utils.Time;
 import io.confluent.common.utils.Utils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * 传感器类，将连续的数值序列应用到关联的Metric集合中
@@ -20,20 +34,56 @@ import java.util.Set;
  */
 public final class Sensor {
 
+	private static final Logger logger = LoggerFactory.getLogger(Sensor.class);
+
+	private static final AtomicLongFieldUpdater<Sensor> SEQUENCE = AtomicLongFieldUpdater
+			.newUpdater(Sensor.class, "sequence");
+	private static final AtomicLongFieldUpdater<Sensor> VERSION = AtomicLongFieldUpdater
+			.newUpdater(Sensor.class, "version");
+
+	// 传感器未开启时返回的计时器，关闭时不做任何事
+	private static final Timer DISABLED_TIMER = new Timer(null, 0L);
+
 	// 批量Sensor和Metric的注册表
 	private final Metrics registry;
 	// 传感器名称
 	private final String name;
-	// 父传感器数组
-	private final Sensor[] parents;
+	// 父传感器数组，折叠Metric时会追加折叠Sensor
+	private volatile Sensor[] parents;
 	// 指标信号列表
 	private final List<Stat> stats;
+	// 采样时仍然逐条记录的极值信号
+	private volatile Stat[] exactStats;
 	// Kafka指标列表
 	private final List<KafkaMetric> metrics;
 	// 指标计算配置
 	private final MetricConfig config;
 	// 时钟
 	private final Time time;
+	// 异步记录缓冲区，同步记录时为null
+	private final RecordBuffer buffer;
+	// 是否有线程持有锁正在记录，只在开启自身指标时维护，作为锁竞争的提示
+	private volatile boolean recording;
+	// 进入锁前发现其他线程正在记录的次数，只在开启自身指标时统计
+	private long lockContentions;
+	// 越界检查的次数，只在开启自身指标时统计
+	private long quotaEvaluations;
+	// 记录级别
+	private final RecordingLevel recordLevel;
+	// 写序号，奇数表示正在修改信号，供乐观读校验
+	private volatile long sequence;
+	// 是否有支持乐观读的Metric，没有时不维护写序号
+	private boolean optimistic;
+	// 版本号，每次记录加1，供增量报告判断Metric是否变化，持有锁时通过lazySet写入，不加锁读取
+	private volatile long version;
+	// 最近一次估计并计入仓库总量的字节数
+	private long accountedBytes;
+	// 下一次在记录路径上重新估计字节数的时间
+	private long nextEstimateMs;
+	// 是否已经被淘汰，淘汰后不再计入仓库总量
+	private boolean released;
+	// 是否因为所有Metric都超过基数限制而被移出仓库，移出后不计入仓库总量
+	private boolean detached;
 
 	Sensor(Metrics registry, String name, Sensor[] parents, MetricConfig config, Time time) {
 		super();
@@ -42,9 +92,13 @@ public final class Sensor {
 		this.parents = parents == null ? new Sensor[0] : parents;
 		this.metrics = new ArrayList<>();
 		this.stats = new ArrayList<>();
+		this.exactStats = new Stat[0];
 		this.config = config;
+		this.recordLevel = config.recordLevel();
 		this.time = time;
+		this.buffer = config.asyncCapacity() > 0 ? new RecordBuffer(config.asyncCapacity()) : null;
 		checkForest(new HashSet<Sensor>());
+		account();
 	}
 
 	/**
@@ -69,6 +123,20 @@ public final class Sensor {
 		return this.name;
 	}
 
+	/**
+	 * 传感器的记录级别
+	 */
+	public RecordingLevel recordLevel() {
+		return this.recordLevel;
+	}
+
+	/**
+	 * 传感器的记录级别是否在仓库当前的级别之内，不在时记录直接返回
+	 */
+	public boolean shouldRecord() {
+		return this.recordLevel.shouldRecord(registry.recordLevel());
+	}
+
 	/**
 	 * 记录产生的事件，{@link #record(double) record(1.0)} 的简写
 	 */
@@ -83,7 +151,9 @@ public final class Sensor {
 	 * @throws QuotaViolationException 越界异常
 	 */
 	public void record(double value) {
-		record(value, time.milliseconds());
+		if (shouldRecord()) {
+			doRecord(value, time.milliseconds());
+		}
 	}
 
 	/**
@@ -96,31 +166,463 @@ public final class Sensor {
 	 * @throws QuotaViolationException  越界异常
 	 */
 	public void record(double value, long timeMs) {
-		synchronized (this) {
-			// 增加所有指标信号的记录数据
-			for (int i = 0; i < this.stats.size(); i++) {
-				this.stats.get(i).record(config, value, timeMs);
+		if (shouldRecord()) {
+			doRecord(value, timeMs);
+		}
+	}
+
+	private void doRecord(double value, long timeMs) {
+		if (buffer != null) {
+			if (buffer.offer(value, timeMs)) {
+				return;
 			}
-			checkQuotas(timeMs);
+			if (config.overflowPolicy() == MetricConfig.OverflowPolicy.DROP) {
+				buffer.drop();
+				return;
+			}
+		}
+		apply(value, 0L, false, timeMs);
+	}
+
+	/**
+	 * 使用该传感器记录整数事件数据，例如纳秒延迟
+	 *
+	 * @param value  需要记录的值
+	 * @throws QuotaViolationException 越界异常
+	 */
+	public void record(long value) {
+		if (shouldRecord()) {
+			doRecord(value, time.milliseconds());
+		}
+	}
+
+	/**
+	 * 按照时间记录整数事件数据，{@link LongStat} 直接记录整数，不做浮点转换，
+	 * 其他信号按照 {@link #record(double, long)} 处理
+	 *
+	 * @param value   需要记录的值
+	 * @param timeMs  当前时间，POSIX格式，毫秒单位
+	 * @throws QuotaViolationException  越界异常
+	 */
+	public void record(long value, long timeMs) {
+		if (shouldRecord()) {
+			doRecord(value, timeMs);
+		}
+	}
+
+	private void doRecord(long value, long timeMs) {
+		if (buffer != null) {
+			// 异步缓冲区只保存浮点值
+			doRecord((double) value, timeMs);
+			return;
+		}
+		apply(value, value, true, timeMs);
+	}
+
+	/**
+	 * 开始计时，与 {@link #stop(long)} 配合使用，不分配对象
+	 *
+	 * <pre>
+	 * long start = sensor.start();
+	 * ...
+	 * sensor.stop(start);
+	 * </pre>
+	 *
+	 * @return 开始时间，纳秒单位，传感器未开启时返回 {@link Long#MIN_VALUE}
+	 */
+	public long start() {
+		return shouldRecord() ? time.nanoseconds() : Long.MIN_VALUE;
+	}
+
+	/**
+	 * 结束计时，记录从开始到现在经过的时间，单位为配置的 {@link MetricConfig#timeUnit()}
+	 *
+	 * @param startNs {@link #start()} 返回的开始时间
+	 * @throws QuotaViolationException 越界异常
+	 */
+	public void stop(long startNs) {
+		if (startNs == Long.MIN_VALUE || !shouldRecord()) {
+			return;
+		}
+		long elapsedNs = time.nanoseconds() - startNs;
+		TimeUnit unit = config.timeUnit();
+		if (unit == TimeUnit.NANOSECONDS) {
+			record(elapsedNs, time.milliseconds());
+		} else {
+			// 保留小数部分，亚毫秒的操作不会记为0
+			record(elapsedNs / (double) unit.toNanos(1), time.milliseconds());
+		}
+	}
+
+	/**
+	 * 创建一个计时器并开始计时，配合try-with-resources使用，关闭时记录经过的时间
+	 *
+	 * <pre>
+	 * try (Sensor.Timer timer = sensor.time()) {
+	 *     ...
+	 * }
+	 * </pre>
+	 *
+	 * 每次调用返回新的计时器，只在计时期间引用传感器；计时器不逃逸时JIT通过逃逸分析消除分配。
+	 * 传感器未开启时返回共享的空计时器。
+	 *
+	 * @return 已经开始计时的计时器
+	 */
+	public Timer time() {
+		long startNs = start();
+		if (startNs == Long.MIN_VALUE) {
+			return DISABLED_TIMER;
+		}
+		return new Timer(this, startNs);
+	}
+
+	/**
+	 * 将记录应用到所有信号并传递给父传感器
+	 *
+	 * @param value      需要记录的值
+	 * @param longValue  整数记录的值
+	 * @param integral   是否为整数记录
+	 * @param timeMs     记录时间
+	 */
+	private void apply(double value, long longValue, boolean integral, long timeMs) {
+		SelfMetrics self = registry.selfMetrics();
+		if (self != null && self.sample() && !self.owns(this)) {
+			long start = System.nanoTime();
+			recordStats(value, longValue, integral, timeMs, true);
+			self.recorded(System.nanoTime() - start, timeMs);
+		} else {
+			recordStats(value, longValue, integral, timeMs, self != null);
 		}
 		// 在所有父传感器中增加记录数据
+		Sensor[] parents = this.parents;
+		for (int i = 0; i < parents.length; i++) {
+			if (integral) {
+				parents[i].record(longValue, timeMs);
+			} else {
+				parents[i].record(value, timeMs);
+			}
+		}
+	}
+
+	/**
+	 * 将记录应用到该传感器的信号中，采样时未被选中的事件只记录极值信号
+	 *
+	 * @param value      需要记录的值
+	 * @param longValue  整数记录的值
+	 * @param integral   是否为整数记录
+	 * @param timeMs     记录时间
+	 * @param tracked    是否统计锁竞争和越界检查次数，开启自身指标时为true
+	 */
+	private void recordStats(double value, long longValue, boolean integral, long timeMs,
+			boolean tracked) {
+		int rate = config.samplingRate();
+		boolean sampled = rate <= 1 || ThreadLocalRandom.current().nextInt(rate) == 0;
+		Stat[] exact = this.exactStats;
+		if (!sampled && exact.length == 0) {
+			return;
+		}
+		// 进入锁之前检查标志，只是尽力而为的提示：持有锁的线程可能恰好已经清除标志，
+		// 也可能有多个等待的线程同时计数
+		boolean contended = tracked && this.recording;
+		synchronized (this) {
+			if (contended) {
+				this.lockContentions++;
+			}
+			if (tracked) {
+				this.recording = true;
+			}
+			beginWrite();
+			try {
+				if (sampled) {
+					// 增加所有指标信号的记录数据
+					for (int i = 0; i < this.stats.size(); i++) {
+						Stat stat = this.stats.get(i);
+						if (integral && stat instanceof LongStat) {
+							((LongStat) stat).record(config, longValue, timeMs);
+						} else {
+							stat.record(config, value, timeMs);
+						}
+					}
+					checkQuotas(timeMs, tracked);
+				} else {
+					for (int i = 0; i < exact.length; i++) {
+						exact[i].record(config, value, timeMs);
+					}
+				}
+			} finally {
+				VERSION.lazySet(this, this.version + 1);
+				endWrite();
+				if (timeMs >= this.nextEstimateMs) {
+					account(timeMs);
+				}
+				if (tracked) {
+					this.recording = false;
+				}
+			}
+		}
+	}
+
+	/**
+	 * 开始修改信号，写序号变为奇数，调用方需持有传感器的锁
+	 */
+	void beginWrite() {
+		if (this.optimistic) {
+			// 原子递增同时读取序号，与读者校验时的CAS在同步顺序中有先后：
+			// 读者在前时读者的读取先行发生于后续对信号的修改，读者在后时读者看到序号变化
+			SEQUENCE.incrementAndGet(this);
+		}
+	}
+
+	/**
+	 * 结束修改信号，写序号变为偶数，调用方需持有传感器的锁
+	 */
+	void endWrite() {
+		if (this.optimistic) {
+			// volatile写，之前对信号的修改先行发生于读到该序号的读者
+			this.sequence = this.sequence + 1;
+		}
+	}
+
+	/**
+	 * 当前版本号，不加锁读取，不会读到不完整的值，可能读到稍旧的值
+	 */
+	long version() {
+		return this.version;
+	}
+
+	/**
+	 * 当前写序号
+	 */
+	long sequence() {
+		return this.sequence;
+	}
+
+	/**
+	 * 校验乐观读期间写序号没有变化
+	 *
+	 * <p> 使用写入相同值的CAS而不是普通的volatile读：CAS的写入部分阻止之前对信号的普通读
+	 *  重排到校验之后，并且与写者的原子递增构成先行发生关系。
+	 *
+	 * @param sequence 乐观读开始时的写序号
+	 */
+	boolean validate(long sequence) {
+		return SEQUENCE.compareAndSet(this, sequence, sequence);
+	}
+
+	/**
+	 * 进入锁前发现其他线程正在记录的次数，为近似值，只统计开启自身指标之后的记录
+	 */
+	synchronized long lockContentions() {
+		return this.lockContentions;
+	}
+
+	/**
+	 * 越界检查的次数，只统计开启自身指标之后的记录
+	 */
+	synchronized long quotaEvaluations() {
+		return this.quotaEvaluations;
+	}
+
+	/**
+	 * 是否为异步记录的传感器
+	 */
+	public boolean async() {
+		return buffer != null;
+	}
+
+	/**
+	 * 将异步缓冲区中的记录应用到信号中，同步传感器直接返回0
+	 *
+	 * <p> 后台聚合线程会周期性调用，读取Metric前需要最新结果时也可以主动调用。
+	 *  越界异常和信号抛出的其他异常无法抛给记录方，只记录日志，跳过该条记录继续处理。
+	 *
+	 * @return 处理的记录数
+	 */
+	public int flush() {
+		if (buffer == null) {
+			return 0;
+		}
+		int drained = 0;
+		synchronized (buffer) {
+			while (buffer.poll()) {
+				drained++;
+				try {
+					apply(buffer.value(), 0L, false, buffer.timeMs());
+				} catch (QuotaViolationException e) {
+					logger.debug("Quota violation while applying async record to sensor {}: {}",
+							name, e.getMessage());
+				} catch (RuntimeException e) {
+					logger.error("Error applying async record to sensor " + name + ": ", e);
+				}
+			}
+		}
+		return drained;
+	}
+
+	/**
+	 * 异步缓冲区满时丢弃的记录数
+	 */
+	public long droppedRecords() {
+		return buffer == null ? 0 : buffer.dropped();
+	}
+
+	/**
+	 * 估计Sensor占用的堆内存字节数，包括信号及其样本、直方图、Metric对象和名称以及异步缓冲区，
+	 * 堆外直方图的桶不计算在内
+	 */
+	public synchronized long estimatedBytes() {
+		return estimate();
+	}
+
+	/**
+	 * 重新估计占用的字节数，把变化量计入仓库的总量，调用方需持有传感器的锁
+	 *
+	 * <p> 在添加信号时调用，记录时每个时间窗口最多调用一次，这样懒创建的样本也能计入，
+	 *  不需要在检查内存预算时遍历所有Sensor。
+	 */
+	private void account() {
+		if (this.released || this.detached) {
+			return;
+		}
+		long bytes = estimate();
+		this.registry.accounted(bytes - this.accountedBytes);
+		this.accountedBytes = bytes;
+	}
+
+	/**
+	 * 成功添加信号后，被移出仓库的Sensor放回仓库，然后重新估计占用的字节数
+	 */
+	private void added() {
+		if (this.detached) {
+			this.detached = !this.registry.reattach(this);
+		}
+		account();
+	}
+
+	/**
+	 * 添加的Metric被基数限制拒绝或者折叠后，如果Sensor没有任何Metric，则移出仓库并扣除占用的字节数，
+	 * 不让错误的标签在仓库中留下空的Sensor
+	 */
+	private void rejected() {
+		if (this.metrics.isEmpty() && !this.detached && this.registry.detach(this)) {
+			this.detached = true;
+			this.registry.accounted(-this.accountedBytes);
+			this.accountedBytes = 0;
+		} else {
+			account();
+		}
+	}
+
+	/**
+	 * 在记录路径上重新估计占用的字节数，并推迟到下一个时间窗口
+	 *
+	 * @param timeMs 记录时间
+	 */
+	private void account(long timeMs) {
+		this.nextEstimateMs = timeMs + config.timeWindowMs();
+		account();
+	}
+
+	private long estimate() {
+		long bytes = SizeEstimable.OBJECT_HEADER + 96 + MetricName.estimatedBytes(name);
+		bytes += SizeEstimable.ARRAY_HEADER + SizeEstimable.REFERENCE * this.parents.length;
+		bytes += SizeEstimable.ARRAY_HEADER + SizeEstimable.REFERENCE * this.exactStats.length;
+		bytes += 2 * (SizeEstimable.OBJECT_HEADER + 8 + SizeEstimable.ARRAY_HEADER);
+		for (Stat stat : this.stats) {
+			bytes += SizeEstimable.REFERENCE;
+			bytes += stat instanceof SizeEstimable ? ((SizeEstimable) stat).estimatedBytes()
+					: SizeEstimable.OBJECT_HEADER;
+		}
+		for (KafkaMetric metric : this.metrics) {
+			bytes += SizeEstimable.REFERENCE + metric.estimatedBytes();
+		}
+		if (this.buffer != null) {
+			bytes += this.buffer.estimatedBytes();
+		}
+		return bytes;
+	}
+
+	/**
+	 * 记录带键的事件数据，键只对 {@link KeyedStat} 有意义，其他信号按照普通记录处理
+	 *
+	 * @param key    记录的键，例如客户端ID
+	 * @param value  需要记录的值
+	 * @throws QuotaViolationException 越界异常
+	 */
+	public void record(String key, double value) {
+		if (shouldRecord()) {
+			record(key, value, time.milliseconds());
+		}
+	}
+
+	/**
+	 * 按照时间记录带键的事件数据，采样方式与 {@link #record(double, long)} 相同，
+	 * 未被选中的事件只记录极值信号
+	 *
+	 * @param key     记录的键，例如客户端ID
+	 * @param value   需要记录的值
+	 * @param timeMs  当前时间，POSIX格式，毫秒单位
+	 * @throws QuotaViolationException  越界异常
+	 */
+	public void record(String key, double value, long timeMs) {
+		if (!shouldRecord()) {
+			return;
+		}
+		boolean tracked = registry.selfMetrics() != null;
+		int rate = config.samplingRate();
+		// 累加类信号按照采样率放大，带键的记录必须使用相同的采样
+		boolean sampled = rate <= 1 || ThreadLocalRandom.current().nextInt(rate) == 0;
+		Stat[] exact = this.exactStats;
+		if (sampled || exact.length > 0) {
+			synchronized (this) {
+				beginWrite();
+				try {
+					if (sampled) {
+						for (int i = 0; i < this.stats.size(); i++) {
+							Stat stat = this.stats.get(i);
+							if (stat instanceof KeyedStat) {
+								((KeyedStat) stat).record(config, key, value, timeMs);
+							} else {
+								stat.record(config, value, timeMs);
+							}
+						}
+						checkQuotas(timeMs, tracked);
+					} else {
+						for (int i = 0; i < exact.length; i++) {
+							exact[i].record(config, value, timeMs);
+						}
+					}
+				} finally {
+					VERSION.lazySet(this, this.version + 1);
+					endWrite();
+					if (timeMs >= this.nextEstimateMs) {
+						account(timeMs);
+					}
+				}
+			}
+		}
+		Sensor[] parents = this.parents;
 		for (int i = 0; i < parents.length; i++) {
-			parents[i].record(value, timeMs);
+			parents[i].record(key, value, timeMs);
 		}
 	}
 
 	/**
 	 * 检查某个时间所有metric是否违反了越界条件
 	 *
-	 * @param timeMs  时间
+	 * @param timeMs   时间
+	 * @param tracked  是否统计越界检查次数
 	 */
-	private void checkQuotas(long timeMs) {
+	private void checkQuotas(long timeMs, boolean tracked) {
 		for (int i = 0; i < this.metrics.size(); i++) {
 			KafkaMetric metric = this.metrics.get(i);
 			MetricConfig config = metric.config();
 			if (config != null) {
 				Quota quota = config.quota();
 				if (quota != null) {
+					if (tracked) {
+						this.quotaEvaluations++;
+					}
 					if (!quota.acceptable(metric.value(timeMs))) {
 						throw new QuotaViolationException(metric.metricName()
 								+ " is in violation of its quota of " + quota.bound());
@@ -146,14 +648,25 @@ public final class Sensor {
 	 * @param config 信号配置，如果为null则使用该传感器默认配置
 	 */
 	public synchronized void add(CompoundStat stat, MetricConfig config) {
-		// 添加该组合信号
-		this.stats.add(Utils.notNull(stat));
-		// 对该组合信号中的每个命名计算器进行指标注册和添加
+		Utils.notNull(stat);
+		boolean registered = false;
+		// 对该组合信号中的每个命名计算器进行指标注册和添加，组合信号不支持折叠
 		for (CompoundStat.NamedMeasurable m : stat.stats()) {
 			KafkaMetric metric = new KafkaMetric(this, m.name(), m.stat(),
 					config == null ? this.config : config, time);
-			this.registry.registerMetric(metric);
-			this.metrics.add(metric);
+			if (this.registry.registerMetric(metric)) {
+				this.metrics.add(metric);
+				registered = true;
+			} else {
+				this.registry.overflow(m.name(), null, null);
+			}
+		}
+		// 至少有一个Metric注册成功时才添加该组合信号
+		if (registered) {
+			this.stats.add(stat);
+			added();
+		} else {
+			rejected();
 		}
 	}
 
@@ -175,11 +688,118 @@ public final class Sensor {
 	 * @param config      该Metric的配置，如果为null则使用该传感器默认配置
 	 */
 	public synchronized void add(MetricName metricName, MeasurableStat stat, MetricConfig config) {
-		KafkaMetric metric = new KafkaMetric(new Object(), Utils.notNull(metricName),
-				Utils.notNull(stat), config == null ? this.config : config, time);
-		this.registry.registerMetric(metric);
+		KafkaMetric metric = new KafkaMetric(this, Utils.notNull(metricName),
+				scaled(Utils.notNull(stat)), config == null ? this.config : config, time);
+		if (!this.registry.registerMetric(metric)) {
+			// 超过基数限制，折叠时通过父Sensor把记录汇总到折叠Metric中
+			Sensor overflow = this.registry.overflow(metricName, stat, metric.config());
+			if (overflow != null) {
+				addParent(overflow);
+			}
+			rejected();
+			return;
+		}
 		this.metrics.add(metric);
 		this.stats.add(stat);
+		if (stat instanceof OptimisticMeasurable) {
+			this.optimistic = true;
+		}
+		if (this.config.samplingRate() > 1 && this.config.exactExtremes()
+				&& (stat instanceof Max || stat instanceof Min || stat instanceof SlidingExtremum)) {
+			Stat[] exact = Arrays.copyOf(this.exactStats, this.exactStats.length + 1);
+			exact[this.exactStats.length] = stat;
+			this.exactStats = exact;
+		}
+		added();
+	}
+
+	/**
+	 * 基于该传感器注册一个计算结果按照固定倍数放大的Metric，用于自身指标中被采样的记录
+	 *
+	 * @param metricName  Metric名称信息
+	 * @param stat        需要保留的统计信号
+	 * @param scale       放大倍数
+	 */
+	synchronized void addScaled(MetricName metricName, MeasurableStat stat, double scale) {
+		KafkaMetric metric = new KafkaMetric(this, metricName, new ScaledMeasurable(stat, scale),
+				this.config, time);
+		if (this.registry.registerMetric(metric)) {
+			this.metrics.add(metric);
+			this.stats.add(stat);
+			if (stat instanceof OptimisticMeasurable) {
+				this.optimistic = true;
+			}
+			account();
+		}
+	}
+
+	/**
+	 * 采样时对累加类信号（计数、总和、比率）的计算结果乘以采样率
+	 *
+	 * @param stat 统计信号
+	 * @return 计算器
+	 */
+	private Measurable scaled(MeasurableStat stat) {
+		int rate = this.config.samplingRate();
+		if (rate > 1 && (stat instanceof Count || stat instanceof Total || stat instanceof Rate
+				|| stat instanceof Rate.SampledTotal)) {
+			return new ScaledMeasurable(stat, rate);
+		}
+		return stat;
+	}
+
+	/**
+	 * 追加一个父传感器，已经存在时忽略
+	 *
+	 * @param parent 父传感器
+	 */
+	private void addParent(Sensor parent) {
+		Sensor[] current = this.parents;
+		for (int i = 0; i < current.length; i++) {
+			if (current[i] == parent) {
+				return;
+			}
+		}
+		Sensor[] updated = Arrays.copyOf(current, current.length + 1);
+		updated[current.length] = parent;
+		this.parents = updated;
+	}
+
+	/**
+	 * 归还所有信号持有的外部资源，并从仓库的内存总量中扣除，Sensor被淘汰时调用
+	 */
+	synchronized void release() {
+		for (Stat stat : this.stats) {
+			if (stat instanceof Releasable) {
+				((Releasable) stat).release();
+			}
+		}
+		this.released = true;
+		this.registry.accounted(-this.accountedBytes);
+		this.accountedBytes = 0;
+	}
+
+	/**
+	 * 查询组合信号 {@link TopK} 当前的前K个键及其值，持有传感器的锁，不会与记录并发
+	 *
+	 * @param stat 已经添加到该传感器的TopK
+	 * @return 按照值从大到小排列的条目
+	 * @throws IllegalArgumentException 该TopK没有添加到这个传感器
+	 */
+	public synchronized List<TopK.Entry> top(TopK stat) {
+		if (!this.stats.contains(stat)) {
+			throw new IllegalArgumentException("The stat was not added to sensor " + name);
+		}
+		// 使用添加信号时的配置
+		MetricConfig config = this.config;
+		MetricName first = stat.stats().get(0).name();
+		for (int i = 0; i < this.metrics.size(); i++) {
+			if (this.metrics.get(i).metricName().equals(first)) {
+				config = this.metrics.get(i).config();
+				break;
+			}
+		}
+		return stat.top(config, time.milliseconds());
 	}
 
 	/**
@@ -191,4 +811,96 @@ public final class Sensor {
 		return Collections.unmodifiableList(this.metrics);
 	}
 
+	/**
+	 * 记录级别，级别高于仓库当前级别的传感器不记录数据
+	 *
+	 * @author wanggang
+	 *
+	 */
+	public static enum RecordingLevel {
+		// 默认级别，始终记录
+		INFO,
+		// 调试级别，例如每个分区的指标
+		DEBUG,
+		// 跟踪级别
+		TRACE;
+
+		/**
+		 * 在给定的级别下是否记录
+		 *
+		 * @param threshold 仓库当前的级别
+		 */
+		public boolean shouldRecord(RecordingLevel threshold) {
+			return this.ordinal() <= threshold.ordinal();
+		}
+	}
+
+	/**
+	 * 传感器的计时器，由 {@link Sensor#time()} 获取，关闭时记录经过的时间
+	 *
+	 * @author wanggang
+	 *
+	 */
+	public static final class Timer implements AutoCloseable {
+
+		// 正在计时的传感器，关闭后为null
+		private Sensor sensor;
+		// 开始时间，纳秒单位
+		private final long startNs;
+
+		private Timer(Sensor sensor, long startNs) {
+			this.sensor = sensor;
+			this.startNs = startNs;
+		}
+
+		/**
+		 * 结束计时并记录经过的时间，重复关闭无影响
+		 *
+		 * @throws QuotaViolationException 越界异常
+		 */
+		@Override
+		public void close() {
+			Sensor sensor = this.sensor;
+			if (sensor != null) {
+				this.sensor = null;
+				sensor.stop(startNs);
+			}
+		}
+
+	}
+
+	/**
+	 * 按照采样率放大的计算器
+	 *
+	 * @author wanggang
+	 *
+	 */
+	private static class ScaledMeasurable implements OptimisticMeasurable {
+
+		private final Measurable measurable;
+		private final double scale;
+
+		private ScaledMeasurable(Measurable measurable, double scale) {
+			this.measurable = measurable;
+			this.scale = scale;
+		}
+
+		@Override
+		public double measure(MetricConfig config, long now) {
+			return measurable.measure(config, now) * scale;
+		}
+
+		@Override
+		public boolean peekable(MetricConfig config, long now) {
+			return measurable instanceof OptimisticMeasurable
+					&& ((OptimisticMeasurable) measurable).peekable(config, now);
+		}
+
+		@Override
+		public double peek(MetricConfig config, long now) {
+			return ((OptimisticMeasurable) measurable).peek(config, now) * scale;
+		}
+
+	}
+
 }
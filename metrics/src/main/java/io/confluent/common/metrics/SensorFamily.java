@@ -0,0 +1,391 @@
+package io.confluent.common.metrics;
+
+import io.confluent.common.metrics.exceptions.MetricsException;
+import io.confluent.common.utils.Time;
+import io.confluent.common.utils.Utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * 按键划分的传感器族，例如每个客户端、每个IP一个子Sensor
+ *
+ * 子Sensor在第一次记录时按照模板创建，名称为 族名:键，Metric名称由 {@link MetricNameTemplate}
+ * 加上键对应的标签生成。子Sensor数达到容量后，创建新的子Sensor前淘汰较久没有记录的子Sensor，
+ * 从仓库中删除它的Metric并归还信号的资源。子Sensor不放入仓库的Sensor列表。
+ *
+ * 子Sensor保存在开放寻址（线性探测）的哈希表中，表中只存条目下标，键、Sensor和访问序号
+ * 都保存在按容量预分配的数组中，条目下标在淘汰后复用。子Sensor只支持同步记录。
+ *
+ * 查找已有的子Sensor不加锁，通过族的写序号校验，方式与 {@link KafkaMetric} 的乐观读相同，
+ * 只有创建和淘汰需要获取族的锁。访问序号在锁外用普通写更新，并发时可能丢失更新，
+ * 所以淘汰是近似的LRU：从轮转位置开始比较 {@link #EVICTION_SAMPLES} 个条目，
+ * 淘汰其中最久没有访问的，容量不超过该数量时与LRU一致。
+ *
+ * @author wanggang
+ *
+ */
+public final class SensorFamily {
+
+	// 空槽位
+	private static final int EMPTY = -1;
+	// 每次淘汰比较的条目数
+	public static final int EVICTION_SAMPLES = 16;
+
+	private static final AtomicLongFieldUpdater<SensorFamily> SEQUENCE = AtomicLongFieldUpdater
+			.newUpdater(SensorFamily.class, "sequence");
+
+	// 仓库
+	private final Metrics registry;
+	// 族名
+	private final String name;
+	// 键对应的标签名
+	private final String tagKey;
+	// 子Sensor的配置
+	private final MetricConfig config;
+	// 子Sensor的父Sensor
+	private final Sensor[] parents;
+	// 时钟
+	private final Time time;
+	// 子Sensor的模板
+	private final List<MetricNameTemplate> templates;
+	private final List<StatFactory> factories;
+	// 哈希表，保存条目下标
+	private final int[] table;
+	private final int mask;
+	// 条目：键、哈希值、子Sensor
+	private final String[] keys;
+	private final int[] hashes;
+	private final Sensor[] sensors;
+	// 条目最近一次访问的序号，锁外普通写
+	private final long[] stamps;
+	// 访问序号，锁外普通写，可能丢失更新
+	private long tick;
+	// 淘汰时开始比较的条目下标
+	private int hand;
+	// 已使用的条目数
+	private int size;
+	// 被淘汰的子Sensor数
+	private long evictions;
+	// 写序号，奇数表示正在修改哈希表，供不加锁的查找校验
+	private volatile long sequence;
+
+	SensorFamily(Metrics registry, String name, String tagKey, int capacity, MetricConfig config,
+			Sensor[] parents, Time time) {
+		if (capacity < 1 || capacity > (1 << 29)) {
+			throw new IllegalArgumentException("Capacity must be between 1 and 2^29.");
+		}
+		if (config.asyncCapacity() > 0) {
+			throw new IllegalArgumentException("Sensor families do not support async recording.");
+		}
+		this.registry = registry;
+		this.name = Utils.notNull(name);
+		this.tagKey = Utils.notNull(tagKey);
+		this.config = config;
+		this.parents = parents == null ? new Sensor[0] : parents;
+		this.time = time;
+		this.templates = new ArrayList<>();
+		this.factories = new ArrayList<>();
+		int tableSize = Integer.highestOneBit(capacity * 2 - 1) << 1;
+		this.table = new int[tableSize];
+		for (int i = 0; i < tableSize; i++) {
+			this.table[i] = EMPTY;
+		}
+		this.mask = tableSize - 1;
+		this.keys = new String[capacity];
+		this.hashes = new int[capacity];
+		this.sensors = new Sensor[capacity];
+		this.stamps = new long[capacity];
+		this.hand = 0;
+		this.size = 0;
+		registry.accounted(estimatedBytes());
+	}
+
+	public String name() {
+		return name;
+	}
+
+	/**
+	 * 添加一个子Sensor的Metric模板，只对之后创建的子Sensor生效
+	 *
+	 * @param template  Metric名称模板
+	 * @param factory   为每个子Sensor创建信号
+	 */
+	public synchronized void add(MetricNameTemplate template, StatFactory factory) {
+		this.templates.add(Utils.notNull(template));
+		this.factories.add(Utils.notNull(factory));
+	}
+
+	/**
+	 * 记录某个键的事件数据
+	 *
+	 * @param key    键
+	 * @param value  需要记录的值
+	 * @throws QuotaViolationException 越界异常
+	 */
+	public void record(String key, double value) {
+		record(key, value, time.milliseconds());
+	}
+
+	/**
+	 * 按照时间记录某个键的事件数据
+	 *
+	 * @param key     键
+	 * @param value   需要记录的值
+	 * @param timeMs  当前时间，POSIX格式，毫秒单位
+	 * @throws QuotaViolationException 越界异常
+	 */
+	public void record(String key, double value, long timeMs) {
+		sensor(key).record(value, timeMs);
+	}
+
+	/**
+	 * 获取或者创建某个键的子Sensor，并标记为最近使用
+	 *
+	 * <p> 仓库设置了内存预算时，族未满的情况下创建新的子Sensor前检查预算，
+	 *  检查在族的锁之外进行，避免与统计其他族的线程互相等待。
+	 *
+	 * @param key 键
+	 * @return 子Sensor
+	 * @throws MetricsException 超出仓库的内存预算
+	 */
+	public Sensor sensor(String key) {
+		int hash = spread(key.hashCode());
+		Sensor sensor = lookup(key, hash);
+		if (sensor != null) {
+			return sensor;
+		}
+		synchronized (this) {
+			if (size == keys.length) {
+				return create(key, hash);
+			}
+		}
+		registry.checkMemoryBudget(name + ":" + key);
+		synchronized (this) {
+			return create(key, hash);
+		}
+	}
+
+	/**
+	 * 不加锁查找已有的子Sensor，并更新访问序号
+	 *
+	 * @return 子Sensor，不存在、正在修改或者校验失败时返回null，由调用方加锁重试
+	 */
+	private Sensor lookup(String key, int hash) {
+		long sequence = this.sequence;
+		if ((sequence & 1) != 0) {
+			return null;
+		}
+		int entry = EMPTY;
+		int slot = hash & mask;
+		// 并发修改时可能读到不一致的表，限制探测次数避免死循环
+		for (int probes = 0; probes < table.length; probes++) {
+			int e = table[slot];
+			if (e == EMPTY) {
+				break;
+			}
+			if (hashes[e] == hash && key.equals(keys[e])) {
+				entry = e;
+				break;
+			}
+			slot = (slot + 1) & mask;
+		}
+		if (entry == EMPTY) {
+			return null;
+		}
+		Sensor sensor = sensors[entry];
+		if (sensor == null || !SEQUENCE.compareAndSet(this, sequence, sequence)) {
+			return null;
+		}
+		touch(entry);
+		return sensor;
+	}
+
+	/**
+	 * 创建子Sensor，已经存在时直接返回，族已满时先淘汰较久没有记录的子Sensor
+	 */
+	private Sensor create(String key, int hash) {
+		int entry = table[find(key, hash)];
+		if (entry != EMPTY) {
+			touch(entry);
+			return sensors[entry];
+		}
+		if (size == keys.length) {
+			evict(victim());
+		}
+		Sensor sensor = new Sensor(registry, name + ":" + key, parents, config, time);
+		for (int i = 0; i < templates.size(); i++) {
+			sensor.add(templates.get(i).instance(tagKey, key), factories.get(i).create());
+		}
+		beginWrite();
+		try {
+			entry = size++;
+			keys[entry] = key;
+			hashes[entry] = hash;
+			sensors[entry] = sensor;
+			table[find(key, hash)] = entry;
+		} finally {
+			endWrite();
+		}
+		registry.accounted(MetricName.estimatedBytes(key));
+		touch(entry);
+		return sensor;
+	}
+
+	/**
+	 * 记录一次访问，锁外调用时可能与其他线程的更新互相覆盖，只影响淘汰顺序
+	 */
+	private void touch(int entry) {
+		long tick = this.tick + 1;
+		this.tick = tick;
+		stamps[entry] = tick;
+	}
+
+	/**
+	 * 从轮转位置开始比较最多 {@link #EVICTION_SAMPLES} 个条目，选出访问序号最小的条目
+	 */
+	private int victim() {
+		int candidates = Math.min(size, EVICTION_SAMPLES);
+		int victim = EMPTY;
+		for (int i = 0; i < candidates; i++) {
+			int entry = (hand + i) % size;
+			if (victim == EMPTY || stamps[entry] < stamps[victim]) {
+				victim = entry;
+			}
+		}
+		hand = (hand + candidates) % size;
+		return victim;
+	}
+
+	/**
+	 * 开始修改哈希表和条目，写序号变为奇数，调用方需持有族的锁
+	 */
+	private void beginWrite() {
+		SEQUENCE.incrementAndGet(this);
+	}
+
+	/**
+	 * 结束修改，写序号变为偶数，调用方需持有族的锁
+	 */
+	private void endWrite() {
+		this.sequence = this.sequence + 1;
+	}
+
+	/**
+	 * 估计族占用的字节数，包括哈希表、条目数组和所有子Sensor
+	 */
+	public synchronized long estimatedBytes() {
+		int capacity = keys.length;
+		long bytes = SizeEstimable.OBJECT_HEADER + 64;
+		bytes += 3 * SizeEstimable.ARRAY_HEADER + 4L * (table.length + capacity) + 8L * capacity;
+		bytes += 2 * SizeEstimable.ARRAY_HEADER + 2L * SizeEstimable.REFERENCE * capacity;
+		for (int i = 0; i < size; i++) {
+			bytes += MetricName.estimatedBytes(keys[i]) + sensors[i].estimatedBytes();
+		}
+		return bytes;
+	}
+
+	/**
+	 * 当前的子Sensor数
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * 被淘汰的子Sensor数
+	 */
+	public synchronized long evictions() {
+		return evictions;
+	}
+
+	/**
+	 * 查找键所在的槽位，不存在时返回探测到的空槽位
+	 */
+	private int find(String key, int hash) {
+		int slot = hash & mask;
+		while (true) {
+			int entry = table[slot];
+			if (entry == EMPTY || (hashes[entry] == hash && keys[entry].equals(key))) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/**
+	 * 淘汰一个条目：从哈希表中移除，并把最后一个条目移到该位置保持条目紧凑，
+	 * 然后删除Metric并归还信号的资源
+	 *
+	 * <p> 先从表中移除，之后的查找不会再返回该Sensor；已经拿到该Sensor的线程仍然可以记录，
+	 *  数据不再报告。
+	 *
+	 * @param entry 条目下标
+	 */
+	private void evict(int entry) {
+		Sensor sensor = sensors[entry];
+		String key = keys[entry];
+		beginWrite();
+		try {
+			removeFromTable(find(keys[entry], hashes[entry]));
+			int last = size - 1;
+			if (entry != last) {
+				// 把最后一个条目移到空出的位置
+				table[find(keys[last], hashes[last])] = entry;
+				keys[entry] = keys[last];
+				hashes[entry] = hashes[last];
+				sensors[entry] = sensors[last];
+				stamps[entry] = stamps[last];
+			}
+			keys[last] = null;
+			sensors[last] = null;
+			size--;
+		} finally {
+			endWrite();
+		}
+		for (KafkaMetric metric : sensor.metrics()) {
+			registry.removeMetric(metric.metricName());
+		}
+		sensor.release();
+		registry.accounted(-MetricName.estimatedBytes(key));
+		evictions++;
+	}
+
+	/**
+	 * 删除槽位，后移删除法（backward shift）保证线性探测的查找链不断开
+	 *
+	 * @param slot 槽位
+	 */
+	private void removeFromTable(int slot) {
+		int hole = slot;
+		int current = (slot + 1) & mask;
+		while (table[current] != EMPTY) {
+			int home = hashes[table[current]] & mask;
+			// home不在(hole, current]区间内时，该条目可以移到hole
+			if (((current - home) & mask) >= ((current - hole) & mask)) {
+				table[hole] = table[current];
+				hole = current;
+			}
+			current = (current + 1) & mask;
+		}
+		table[hole] = EMPTY;
+	}
+
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * 为每个子Sensor创建新的信号实例
+	 *
+	 * @author wanggang
+	 *
+	 */
+	public static interface StatFactory {
+
+		public MeasurableStat create();
+
+	}
+
+}
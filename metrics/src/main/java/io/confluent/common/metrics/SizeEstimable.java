@@ -0,0 +1,26 @@
+package io.confluent.common.metrics;
+
+/**
+ * 可以估计自身占用堆内存的对象
+ *
+ * 估计值按照64位JVM开启压缩指针计算，只统计对象自身持有的字段、数组和样本，
+ * 不统计共享的对象（例如容器模型、配置），结果用于发现异常增长，不要求精确。
+ *
+ * @author wanggang
+ *
+ */
+public interface SizeEstimable {
+
+	// 对象头
+	public static final int OBJECT_HEADER = 16;
+	// 数组头
+	public static final int ARRAY_HEADER = 16;
+	// 引用
+	public static final int REFERENCE = 4;
+
+	/**
+	 * 估计占用的字节数，调用方负责同步
+	 */
+	public long estimatedBytes();
+
+}
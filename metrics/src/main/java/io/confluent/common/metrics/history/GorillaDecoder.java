@@ -0,0 +1,171 @@
+package io.confluent.common.metrics.history;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Gorilla格式的时间序列解码器，与 {@link GorillaEncoder} 对应
+ *
+ * 编码结果不记录点数，调用方需要自己知道点数（例如由 {@link TimeSeriesWriter} 写在块头中），
+ * 解码器最多读取到缓冲区的limit。解码过程不分配对象。
+ *
+ * @author wanggang
+ *
+ */
+public final class GorillaDecoder {
+
+	// 输入缓冲区
+	private ByteBuffer in;
+	// 位累加器，有效位在高位
+	private long acc;
+	// 累加器中剩余的位数
+	private int accBits;
+	// 已解码的点数
+	private int count;
+	// 当前点
+	private long timeMs;
+	private long value;
+	// 上一个时间差
+	private long prevDelta;
+	// 上一个有效位窗口的前导零数和后缀零数
+	private int prevLeading;
+	private int prevTrailing;
+
+	/**
+	 * @param in 输入缓冲区，从当前位置开始读取
+	 */
+	public GorillaDecoder(ByteBuffer in) {
+		reset(in);
+	}
+
+	/**
+	 * 清空状态，开始从新的缓冲区解码
+	 *
+	 * @param in 输入缓冲区，从当前位置开始读取
+	 */
+	public void reset(ByteBuffer in) {
+		this.in = in;
+		this.acc = 0L;
+		this.accBits = 0;
+		this.count = 0;
+		this.timeMs = 0L;
+		this.value = 0L;
+		this.prevDelta = 0L;
+		this.prevLeading = 0;
+		this.prevTrailing = 0;
+	}
+
+	/**
+	 * 解码下一个点，通过 {@link #timeMs()} 和 {@link #value()} 读取
+	 *
+	 * @throws BufferUnderflowException 输入数据不完整
+	 */
+	public void next() {
+		if (count == 0) {
+			timeMs = readBits(64);
+			value = readBits(64);
+		} else {
+			long delta = prevDelta + readTimestamp();
+			timeMs += delta;
+			prevDelta = delta;
+			value ^= readValue();
+		}
+		count++;
+	}
+
+	private long readTimestamp() {
+		if (readBits(1) == 0) {
+			return 0;
+		}
+		if (readBits(1) == 0) {
+			return signed(readBits(7), 7);
+		}
+		if (readBits(1) == 0) {
+			return signed(readBits(9), 9);
+		}
+		if (readBits(1) == 0) {
+			return signed(readBits(12), 12);
+		}
+		return readBits(64);
+	}
+
+	private long readValue() {
+		if (readBits(1) == 0) {
+			return 0;
+		}
+		if (readBits(1) == 1) {
+			prevLeading = (int) readBits(5);
+			int significant = (int) readBits(6);
+			if (significant == 0) {
+				significant = 64;
+			}
+			prevTrailing = 64 - prevLeading - significant;
+		}
+		return readBits(64 - prevLeading - prevTrailing) << prevTrailing;
+	}
+
+	private static long signed(long bits, int n) {
+		return (bits << (64 - n)) >> (64 - n);
+	}
+
+	/**
+	 * 读取n位，1 <= n <= 64
+	 */
+	private long readBits(int n) {
+		if (n <= accBits) {
+			long result = acc >>> (64 - n);
+			acc = n == 64 ? 0L : acc << n;
+			accBits -= n;
+			return result;
+		}
+		int got = accBits;
+		long high = got == 0 ? 0L : acc >>> (64 - got);
+		refill();
+		int need = n - got;
+		if (accBits < need) {
+			throw new BufferUnderflowException();
+		}
+		long low = acc >>> (64 - need);
+		acc = need == 64 ? 0L : acc << need;
+		accBits -= need;
+		return got == 0 ? low : (high << need) | low;
+	}
+
+	private void refill() {
+		if (in.remaining() >= 8) {
+			long bits = in.getLong();
+			acc = in.order() == ByteOrder.BIG_ENDIAN ? bits : Long.reverseBytes(bits);
+			accBits = 64;
+		} else {
+			acc = 0L;
+			accBits = 0;
+			while (in.hasRemaining()) {
+				acc |= (in.get() & 0xFFL) << (56 - accBits);
+				accBits += 8;
+			}
+		}
+	}
+
+	/**
+	 * 当前点的时间戳
+	 */
+	public long timeMs() {
+		return timeMs;
+	}
+
+	/**
+	 * 当前点的值
+	 */
+	public double value() {
+		return Double.longBitsToDouble(value);
+	}
+
+	/**
+	 * 已解码的点数
+	 */
+	public int count() {
+		return count;
+	}
+
+}
@@ -0,0 +1,217 @@
+package io.confluent.common.metrics.history;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Gorilla格式的时间序列编码器，时间戳按照二阶差分编码，值按照与前一个值的异或编码
+ *
+ * 第一个点原样写入64位时间戳和64位值，之后每个点：
+ * <ul>
+ * <li>时间戳二阶差分：0写'0'，[-64,63]写'10'+7位，[-256,255]写'110'+9位，
+ *  [-2048,2047]写'1110'+12位，其他写'1111'+64位</li>
+ * <li>值的异或：0写'0'；有效位落在上一个有效位窗口内写'10'+窗口内的位；
+ *  否则写'11'+5位前导零数+6位有效位数+有效位</li>
+ * </ul>
+ * 固定间隔、变化缓慢的序列每个点只需要1到2个字节。位先在64位累加器中拼接，
+ * 满64位时写入缓冲区，编码过程不分配对象。
+ *
+ * @author wanggang
+ *
+ */
+public final class GorillaEncoder {
+
+	// 没有上一个有效位窗口
+	private static final int NO_WINDOW = -1;
+	// 一个点编码后的最大位数，第一个点128位，之后每个点最多 4+64 + 2+5+6+64 位
+	private static final int MAX_POINT_BITS = 145;
+
+	// 输出缓冲区
+	private ByteBuffer out;
+	// 位累加器，从高位开始填充
+	private long acc;
+	// 累加器中已经使用的位数
+	private int accBits;
+	// 已编码的点数
+	private int count;
+	// 上一个时间戳
+	private long prevTimeMs;
+	// 上一个时间差
+	private long prevDelta;
+	// 上一个值的位
+	private long prevValue;
+	// 上一个有效位窗口的前导零数和后缀零数
+	private int prevLeading;
+	private int prevTrailing;
+
+	/**
+	 * @param out 输出缓冲区，从当前位置开始写入
+	 */
+	public GorillaEncoder(ByteBuffer out) {
+		reset(out);
+	}
+
+	/**
+	 * 清空状态，开始向新的缓冲区编码
+	 *
+	 * @param out 输出缓冲区，从当前位置开始写入
+	 */
+	public void reset(ByteBuffer out) {
+		this.out = out;
+		this.acc = 0L;
+		this.accBits = 0;
+		this.count = 0;
+		this.prevTimeMs = 0L;
+		this.prevDelta = 0L;
+		this.prevValue = 0L;
+		this.prevLeading = NO_WINDOW;
+		this.prevTrailing = 0;
+	}
+
+	/**
+	 * 编码一个点，输出缓冲区需要至少留出 {@link #maxBytesForNextPoint()} 字节，
+	 * 空间不足时在写入之前抛出异常，编码器状态不变
+	 *
+	 * @param timeMs 时间戳
+	 * @param value  值
+	 * @throws BufferOverflowException 输出缓冲区空间不足
+	 */
+	public void append(long timeMs, double value) {
+		if (out.remaining() < maxBytesForNextPoint()) {
+			throw new BufferOverflowException();
+		}
+		long bits = Double.doubleToRawLongBits(value);
+		if (count == 0) {
+			writeBits(timeMs, 64);
+			writeBits(bits, 64);
+		} else {
+			long delta = timeMs - prevTimeMs;
+			writeTimestamp(delta - prevDelta);
+			writeValue(bits ^ prevValue);
+			prevDelta = delta;
+		}
+		prevTimeMs = timeMs;
+		prevValue = bits;
+		count++;
+	}
+
+	private void writeTimestamp(long dod) {
+		if (dod == 0) {
+			writeBits(0, 1);
+		} else if (dod >= -64 && dod <= 63) {
+			writeBits(0x2, 2);
+			writeBits(dod, 7);
+		} else if (dod >= -256 && dod <= 255) {
+			writeBits(0x6, 3);
+			writeBits(dod, 9);
+		} else if (dod >= -2048 && dod <= 2047) {
+			writeBits(0xE, 4);
+			writeBits(dod, 12);
+		} else {
+			writeBits(0xF, 4);
+			writeBits(dod, 64);
+		}
+	}
+
+	private void writeValue(long xor) {
+		if (xor == 0) {
+			writeBits(0, 1);
+			return;
+		}
+		int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+		int trailing = Long.numberOfTrailingZeros(xor);
+		if (prevLeading != NO_WINDOW && leading >= prevLeading && trailing >= prevTrailing) {
+			writeBits(0x2, 2);
+			writeBits(xor >>> prevTrailing, 64 - prevLeading - prevTrailing);
+		} else {
+			int significant = 64 - leading - trailing;
+			writeBits(0x3, 2);
+			writeBits(leading, 5);
+			// 64位有效位记为0
+			writeBits(significant & 0x3F, 6);
+			writeBits(xor >>> trailing, significant);
+			prevLeading = leading;
+			prevTrailing = trailing;
+		}
+	}
+
+	/**
+	 * 写入value的低n位
+	 */
+	private void writeBits(long value, int n) {
+		if (n < 64) {
+			value &= (1L << n) - 1;
+		}
+		int free = 64 - accBits;
+		if (n <= free) {
+			acc |= value << (free - n);
+			accBits += n;
+			if (accBits == 64) {
+				putLong(acc);
+				acc = 0L;
+				accBits = 0;
+			}
+		} else {
+			int rest = n - free;
+			acc |= value >>> rest;
+			putLong(acc);
+			acc = value << (64 - rest);
+			accBits = rest;
+		}
+	}
+
+	private void putLong(long value) {
+		out.putLong(out.order() == ByteOrder.BIG_ENDIAN ? value : Long.reverseBytes(value));
+	}
+
+	/**
+	 * 写入累加器中剩余的位，最后一个字节低位补0，之后需要 {@link #reset(ByteBuffer)} 才能继续编码
+	 *
+	 * @throws BufferOverflowException 输出缓冲区空间不足
+	 */
+	public void finish() {
+		int bytes = (accBits + 7) / 8;
+		if (out.remaining() < bytes) {
+			throw new BufferOverflowException();
+		}
+		for (int i = 0; i < bytes; i++) {
+			out.put((byte) (acc >>> (56 - 8 * i)));
+		}
+		acc = 0L;
+		accBits = 0;
+	}
+
+	/**
+	 * 已编码的点数
+	 */
+	public int count() {
+		return count;
+	}
+
+	/**
+	 * 调用 {@link #finish()} 后从起始位置算起的总字节数
+	 *
+	 * @param start 开始编码时缓冲区的位置
+	 */
+	public int encodedBytes(int start) {
+		return out.position() - start + (accBits + 7) / 8;
+	}
+
+	/**
+	 * 编码下一个点时最多写入缓冲区的字节数。位按照整个64位字写入，
+	 * 累加器中最多还有63位未写入，所以最多为 {@link #maxBytesPerPoint()} 加8字节
+	 */
+	public int maxBytesForNextPoint() {
+		return (accBits + MAX_POINT_BITS) / 64 * 8;
+	}
+
+	/**
+	 * 一个点编码后的平均最大字节数，用于估算整个块的缓冲区大小，
+	 * 需要另外留出8字节给累加器中未写满64位的部分
+	 */
+	public static int maxBytesPerPoint() {
+		return (MAX_POINT_BITS + 7) / 8;
+	}
+
+}
@@ -0,0 +1,245 @@
+package io.confluent.common.metrics.history;
+
+import io.confluent.common.metrics.KafkaMetric;
+import io.confluent.common.metrics.MetricName;
+import io.confluent.common.metrics.MetricQuery;
+import io.confluent.common.metrics.MetricsRemovalListener;
+import io.confluent.common.metrics.MetricsReporter;
+import io.confluent.common.metrics.SizeEstimable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 内存中的Metric历史数据，监控后端不可用时仍然可以查看最近的情况
+ *
+ * 作为Reporter注册到仓库后跟踪满足条件的Metric，每次调用 {@link #tick(long)}
+ * 时读取所有Metric的值，按照多档精度（默认10秒保留1小时、1分钟保留24小时、5分钟保留7天）聚合保存，
+ * 每个Metric的内存在创建时按照点数一次性分配，之后不再增长。
+ * 默认精度下每个Metric约30KB，跟踪的Metric数量达到上限后新的Metric不再跟踪，只计数。
+ *
+ * <pre>
+ * MetricsHistory history = new MetricsHistory(new MetricQuery().group("producer-metrics"), 100);
+ * metrics.addReporter(history);
+ * // Reporter每次推送时
+ * history.tick(time.milliseconds());
+ * List&lt;MetricsHistory.Point&gt; points = history.range(name, now - 3600 * 1000, now);
+ * </pre>
+ *
+ * @author wanggang
+ *
+ */
+public class MetricsHistory implements MetricsReporter, MetricsRemovalListener, SizeEstimable {
+
+	// 跟踪的Metric条件
+	private final MetricQuery filter;
+	// 各档精度，从细到粗
+	private final Resolution[] resolutions;
+	// 最多跟踪的Metric数量
+	private final int maxMetrics;
+	// 每个Metric的历史数据
+	private final ConcurrentMap<MetricName, TimeSeries> series;
+	// 超过数量上限没有跟踪的Metric数
+	private long rejectedMetrics;
+
+	/**
+	 * 使用默认精度跟踪满足条件的Metric
+	 *
+	 * @param filter      跟踪的Metric条件
+	 * @param maxMetrics  最多跟踪的Metric数量
+	 */
+	public MetricsHistory(MetricQuery filter, int maxMetrics) {
+		this(filter, maxMetrics, new Resolution(10, TimeUnit.SECONDS, 1, TimeUnit.HOURS),
+				new Resolution(1, TimeUnit.MINUTES, 24, TimeUnit.HOURS), new Resolution(5,
+						TimeUnit.MINUTES, 7, TimeUnit.DAYS));
+	}
+
+	/**
+	 * @param filter       跟踪的Metric条件
+	 * @param maxMetrics   最多跟踪的Metric数量，每个Metric的内存固定，总内存不超过上限乘以单个Metric的内存
+	 * @param resolutions  各档精度，间隔必须严格递增
+	 */
+	public MetricsHistory(MetricQuery filter, int maxMetrics, Resolution... resolutions) {
+		if (filter == null) {
+			throw new IllegalArgumentException("Filter is required.");
+		}
+		if (maxMetrics < 1) {
+			throw new IllegalArgumentException("Must track at least 1 metric.");
+		}
+		if (resolutions.length == 0) {
+			throw new IllegalArgumentException("At least one resolution is required.");
+		}
+		for (int i = 1; i < resolutions.length; i++) {
+			if (resolutions[i].intervalMs() <= resolutions[i - 1].intervalMs()) {
+				throw new IllegalArgumentException("Resolution intervals must be increasing.");
+			}
+		}
+		this.filter = filter;
+		this.maxMetrics = maxMetrics;
+		this.resolutions = resolutions.clone();
+		this.series = new ConcurrentHashMap<>();
+	}
+
+	@Override
+	public void configure(Map<String, ?> configs) {
+		// 配置通过构造函数传入
+	}
+
+	@Override
+	public void init(List<KafkaMetric> metrics) {
+		for (KafkaMetric metric : metrics) {
+			metricChange(metric);
+		}
+	}
+
+	@Override
+	public synchronized void metricChange(KafkaMetric metric) {
+		if (!filter.matches(metric.metricName())) {
+			return;
+		}
+		// 替换已经跟踪的Metric不占用新的名额
+		if (this.series.size() >= this.maxMetrics
+				&& !this.series.containsKey(metric.metricName())) {
+			this.rejectedMetrics++;
+			return;
+		}
+		this.series.put(metric.metricName(), new TimeSeries(metric, resolutions));
+	}
+
+	@Override
+	public synchronized void metricRemoval(KafkaMetric metric) {
+		this.series.remove(metric.metricName());
+	}
+
+	@Override
+	public void close() {
+		this.series.clear();
+	}
+
+	/**
+	 * 读取所有跟踪的Metric的当前值并保存
+	 *
+	 * @param nowMs 当前时间
+	 */
+	public void tick(long nowMs) {
+		for (TimeSeries s : this.series.values()) {
+			s.record(s.metric().value(), nowMs);
+		}
+	}
+
+	/**
+	 * 查询某个Metric在时间范围内的历史数据，自动选择能覆盖起始时间的最细精度，
+	 * 每个点的值是该间隔内所有tick的平均值，没有数据的间隔不返回
+	 *
+	 * @param metricName Metric名称
+	 * @param fromMs     起始时间，包含
+	 * @param toMs       结束时间，包含
+	 * @return 按照时间排序的点，Metric没有被跟踪时返回空列表
+	 */
+	public List<Point> range(MetricName metricName, long fromMs, long toMs) {
+		TimeSeries s = this.series.get(metricName);
+		if (s == null) {
+			return Collections.emptyList();
+		}
+		int resolution = s.select(fromMs);
+		if (resolution < 0) {
+			return Collections.emptyList();
+		}
+		List<Point> points = new ArrayList<>();
+		s.range(resolution, fromMs, toMs, points);
+		return points;
+	}
+
+	/**
+	 * 查询某个Metric在指定精度下的历史数据
+	 *
+	 * @param metricName  Metric名称
+	 * @param resolution  精度下标，0为最细
+	 * @param fromMs      起始时间，包含
+	 * @param toMs        结束时间，包含
+	 * @return 按照时间排序的点
+	 */
+	public List<Point> range(MetricName metricName, int resolution, long fromMs, long toMs) {
+		if (resolution < 0 || resolution >= resolutions.length) {
+			throw new IllegalArgumentException("Unknown resolution: " + resolution);
+		}
+		TimeSeries s = this.series.get(metricName);
+		if (s == null) {
+			return Collections.emptyList();
+		}
+		List<Point> points = new ArrayList<>();
+		s.range(resolution, fromMs, toMs, points);
+		return points;
+	}
+
+	public List<Resolution> resolutions() {
+		return Collections.unmodifiableList(Arrays.asList(resolutions));
+	}
+
+	/**
+	 * 跟踪的Metric数量
+	 */
+	public int size() {
+		return this.series.size();
+	}
+
+	/**
+	 * 满足条件但因为超过数量上限没有跟踪的Metric数
+	 */
+	public synchronized long rejectedMetrics() {
+		return this.rejectedMetrics;
+	}
+
+	/**
+	 * 估计所有历史数据占用的字节数
+	 */
+	@Override
+	public long estimatedBytes() {
+		long bytes = OBJECT_HEADER + 3 * REFERENCE + 12;
+		for (TimeSeries s : this.series.values()) {
+			// 哈希表的节点
+			bytes += 32 + s.estimatedBytes();
+		}
+		return bytes;
+	}
+
+	/**
+	 * 历史数据中的一个点
+	 *
+	 * @author wanggang
+	 *
+	 */
+	public static final class Point {
+
+		// 间隔的起始时间
+		private final long timeMs;
+		// 间隔内的平均值
+		private final double value;
+
+		Point(long timeMs, double value) {
+			this.timeMs = timeMs;
+			this.value = value;
+		}
+
+		public long timeMs() {
+			return timeMs;
+		}
+
+		public double value() {
+			return value;
+		}
+
+		@Override
+		public String toString() {
+			return "Point [timeMs=" + timeMs + ", value=" + value + "]";
+		}
+
+	}
+
+}
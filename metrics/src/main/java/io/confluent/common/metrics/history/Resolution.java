@@ -0,0 +1,54 @@
+package io.confluent.common.metrics.history;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 历史数据的一档精度：每个点的时间间隔以及保留的点数
+ *
+ * @author wanggang
+ *
+ */
+public final class Resolution {
+
+	// 每个点的时间间隔，毫秒单位
+	private final long intervalMs;
+	// 保留的点数
+	private final int points;
+
+	/**
+	 * @param interval       每个点的时间间隔
+	 * @param intervalUnit   时间间隔的单位
+	 * @param retention      保留时长，向上取整为间隔的整数倍
+	 * @param retentionUnit  保留时长的单位
+	 */
+	public Resolution(long interval, TimeUnit intervalUnit, long retention, TimeUnit retentionUnit) {
+		this.intervalMs = TimeUnit.MILLISECONDS.convert(interval, intervalUnit);
+		if (this.intervalMs < 1) {
+			throw new IllegalArgumentException("Interval must be at least 1 ms.");
+		}
+		long retentionMs = TimeUnit.MILLISECONDS.convert(retention, retentionUnit);
+		long points = (retentionMs + intervalMs - 1) / intervalMs;
+		if (points < 1 || points > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Retention must cover between 1 and 2^31-1 intervals.");
+		}
+		this.points = (int) points;
+	}
+
+	public long intervalMs() {
+		return intervalMs;
+	}
+
+	public int points() {
+		return points;
+	}
+
+	public long retentionMs() {
+		return intervalMs * points;
+	}
+
+	@Override
+	public String toString() {
+		return "Resolution [intervalMs=" + intervalMs + ", points=" + points + "]";
+	}
+
+}
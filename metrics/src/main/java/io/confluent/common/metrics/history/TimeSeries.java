@@ -0,0 +1,155 @@
+package io.confluent.common.metrics.history;
+
+import io.confluent.common.metrics.KafkaMetric;
+import io.confluent.common.metrics.SizeEstimable;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 单个Metric的多档精度历史数据
+ *
+ * 每档精度一个按照点数预分配的环形数组，槽位由 时间 / 间隔 决定，下标为槽位对点数取模，
+ * 不需要保存时间戳。当前槽位的值先在累加器中求平均，进入下一个槽位时写入环形数组，
+ * 跳过的槽位写入NaN。所有精度都直接由原始值聚合，互不依赖。
+ *
+ * @author wanggang
+ *
+ */
+final class TimeSeries implements SizeEstimable {
+
+	// 没有数据
+	private static final long NONE = Long.MIN_VALUE;
+
+	// 对应的Metric
+	private final KafkaMetric metric;
+	// 各档精度
+	private final Resolution[] resolutions;
+	// 各档精度的环形数组
+	private final double[][] rings;
+	// 各档精度当前的槽位
+	private final long[] currentSlots;
+	// 当前槽位的累加值
+	private final double[] sums;
+	// 当前槽位的累加次数
+	private final int[] counts;
+
+	TimeSeries(KafkaMetric metric, Resolution[] resolutions) {
+		this.metric = metric;
+		this.resolutions = resolutions;
+		this.rings = new double[resolutions.length][];
+		for (int i = 0; i < resolutions.length; i++) {
+			this.rings[i] = new double[resolutions[i].points()];
+			Arrays.fill(this.rings[i], Double.NaN);
+		}
+		this.currentSlots = new long[resolutions.length];
+		Arrays.fill(this.currentSlots, NONE);
+		this.sums = new double[resolutions.length];
+		this.counts = new int[resolutions.length];
+	}
+
+	KafkaMetric metric() {
+		return metric;
+	}
+
+	/**
+	 * 记录一个值，NaN只推进槽位不参与平均
+	 *
+	 * @param value  Metric的值
+	 * @param timeMs 时间
+	 */
+	synchronized void record(double value, long timeMs) {
+		for (int i = 0; i < resolutions.length; i++) {
+			long slot = timeMs / resolutions[i].intervalMs();
+			long current = currentSlots[i];
+			if (current == NONE) {
+				currentSlots[i] = slot;
+			} else if (slot > current) {
+				double[] ring = rings[i];
+				ring[index(current, ring.length)] = counts[i] == 0 ? Double.NaN : sums[i]
+						/ counts[i];
+				long gap = Math.min(slot - current - 1, ring.length);
+				for (long k = 1; k <= gap; k++) {
+					ring[index(current + k, ring.length)] = Double.NaN;
+				}
+				currentSlots[i] = slot;
+				sums[i] = 0.0;
+				counts[i] = 0;
+			} else if (slot < current) {
+				// 时钟回退，丢弃
+				continue;
+			}
+			if (!Double.isNaN(value)) {
+				sums[i] += value;
+				counts[i]++;
+			}
+		}
+	}
+
+	/**
+	 * 选择能覆盖起始时间的最细精度，都不能覆盖时使用最粗的精度
+	 *
+	 * @param fromMs 起始时间
+	 * @return 精度下标，没有数据时返回-1
+	 */
+	synchronized int select(long fromMs) {
+		for (int i = 0; i < resolutions.length; i++) {
+			long current = currentSlots[i];
+			if (current == NONE) {
+				return -1;
+			}
+			long earliest = current - rings[i].length + 1;
+			if (fromMs / resolutions[i].intervalMs() >= earliest) {
+				return i;
+			}
+		}
+		return resolutions.length - 1;
+	}
+
+	/**
+	 * 查询某档精度在时间范围内的点，跳过没有数据的槽位，当前槽位返回目前为止的平均值
+	 *
+	 * @param resolution 精度下标
+	 * @param fromMs     起始时间，包含
+	 * @param toMs       结束时间，包含
+	 * @param points     结果列表
+	 */
+	synchronized void range(int resolution, long fromMs, long toMs,
+			List<MetricsHistory.Point> points) {
+		long current = currentSlots[resolution];
+		if (current == NONE) {
+			return;
+		}
+		long intervalMs = resolutions[resolution].intervalMs();
+		double[] ring = rings[resolution];
+		long first = Math.max(fromMs / intervalMs, current - ring.length + 1);
+		long last = Math.min(toMs / intervalMs, current);
+		for (long slot = first; slot <= last; slot++) {
+			double value;
+			if (slot == current) {
+				value = counts[resolution] == 0 ? Double.NaN : sums[resolution]
+						/ counts[resolution];
+			} else {
+				value = ring[index(slot, ring.length)];
+			}
+			if (!Double.isNaN(value)) {
+				points.add(new MetricsHistory.Point(slot * intervalMs, value));
+			}
+		}
+	}
+
+	@Override
+	public long estimatedBytes() {
+		long bytes = OBJECT_HEADER + 6 * REFERENCE + 3 * ARRAY_HEADER + resolutions.length
+				* (8 + 8 + 4) + ARRAY_HEADER + REFERENCE * rings.length;
+		for (double[] ring : rings) {
+			bytes += ARRAY_HEADER + 8L * ring.length;
+		}
+		return bytes;
+	}
+
+	private static int index(long slot, int length) {
+		return (int) (slot % length);
+	}
+
+}
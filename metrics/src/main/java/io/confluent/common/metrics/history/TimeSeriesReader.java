@@ -0,0 +1,112 @@
+package io.confluent.common.metrics.history;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 读取 {@link TimeSeriesWriter} 写出的压缩时间序列，逐点返回Metric编号、时间戳和值
+ *
+ * 只有完整的块才会被读取，缓冲区末尾不完整的块保留在原位置，
+ * 调用方可以compact后继续填充数据再读取。读取过程不分配对象。
+ *
+ * <pre>
+ * TimeSeriesReader reader = new TimeSeriesReader(buffer);
+ * while (reader.next()) {
+ *     store(reader.metricId(), reader.timeMs(), reader.value());
+ * }
+ * </pre>
+ *
+ * 读取器不是线程安全的。
+ *
+ * @author wanggang
+ *
+ */
+public final class TimeSeriesReader {
+
+	// 输入缓冲区
+	private final ByteBuffer in;
+	// 解码器
+	private final GorillaDecoder decoder;
+	// 当前块的Metric编号
+	private int metricId;
+	// 当前块剩余的点数
+	private int remaining;
+	// 当前块的结束位置
+	private int blockEnd;
+	// 进入当前块前缓冲区的limit
+	private int savedLimit;
+
+	/**
+	 * @param in 输入缓冲区，从当前位置开始读取
+	 */
+	public TimeSeriesReader(ByteBuffer in) {
+		this.in = in;
+		this.decoder = new GorillaDecoder(in);
+		this.remaining = 0;
+		this.blockEnd = -1;
+	}
+
+	/**
+	 * 前进到下一个点
+	 *
+	 * @return 没有完整的块可读时返回false
+	 */
+	public boolean next() {
+		while (remaining == 0) {
+			endBlock();
+			if (in.remaining() < TimeSeriesWriter.HEADER_BYTES) {
+				return false;
+			}
+			int start = in.position();
+			int id = in.getInt(start);
+			int count = in.getInt(start + 4);
+			int length = in.getInt(start + 8);
+			if (in.remaining() < TimeSeriesWriter.HEADER_BYTES + length) {
+				return false;
+			}
+			this.metricId = id;
+			this.remaining = count;
+			this.blockEnd = start + TimeSeriesWriter.HEADER_BYTES + length;
+			this.savedLimit = in.limit();
+			in.position(start + TimeSeriesWriter.HEADER_BYTES);
+			// 解码器最多读到块的末尾
+			in.limit(blockEnd);
+			decoder.reset(in);
+		}
+		decoder.next();
+		remaining--;
+		return true;
+	}
+
+	/**
+	 * 离开当前块，恢复limit并定位到下一个块
+	 */
+	private void endBlock() {
+		if (blockEnd >= 0) {
+			in.limit(savedLimit);
+			in.position(blockEnd);
+			blockEnd = -1;
+		}
+	}
+
+	/**
+	 * 当前点的Metric编号
+	 */
+	public int metricId() {
+		return metricId;
+	}
+
+	/**
+	 * 当前点的时间戳
+	 */
+	public long timeMs() {
+		return decoder.timeMs();
+	}
+
+	/**
+	 * 当前点的值
+	 */
+	public double value() {
+		return decoder.value();
+	}
+
+}
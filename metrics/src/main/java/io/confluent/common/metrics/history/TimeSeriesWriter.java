@@ -0,0 +1,138 @@
+package io.confluent.common.metrics.history;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 按照Metric编号写入压缩时间序列的流式写入器
+ *
+ * 每个Metric编号对应一个编码块，块满blockPoints个点或者调用 {@link #flush()}
+ * 时写入输出缓冲区，块格式为：Metric编号(int)、点数(int)、字节数(int)、Gorilla编码数据。
+ * 整数按照输出缓冲区的字节序写入，读取时使用相同的字节序。
+ *
+ * 编号由调用方分配，应当是从0开始的连续整数，内部按照编号直接索引。
+ * 每个块的编码区按照最大点数预分配，追加点时不分配对象。
+ *
+ * 写入器不是线程安全的。
+ *
+ * @author wanggang
+ *
+ */
+public final class TimeSeriesWriter {
+
+	// 块头的字节数
+	static final int HEADER_BYTES = 12;
+
+	// 输出缓冲区
+	private final ByteBuffer out;
+	// 每个块最多的点数
+	private final int blockPoints;
+	// 按照编号索引的编码块，没有数据的编号为null
+	private Block[] blocks;
+	// 写出的块数
+	private long blocksWritten;
+
+	/**
+	 * @param out          输出缓冲区，空间不足时抛出 {@link BufferOverflowException}，
+	 *                     调用方取走数据后可以重试
+	 * @param blockPoints  每个块最多的点数，越大压缩率越高，未写出的数据也越多
+	 */
+	public TimeSeriesWriter(ByteBuffer out, int blockPoints) {
+		if (blockPoints < 1) {
+			throw new IllegalArgumentException("Block must hold at least 1 point.");
+		}
+		this.out = out;
+		this.blockPoints = blockPoints;
+		this.blocks = new Block[16];
+	}
+
+	/**
+	 * 追加一个点，块已满时先把块写入输出缓冲区
+	 *
+	 * @param metricId  Metric编号
+	 * @param timeMs    时间戳
+	 * @param value     值
+	 * @throws BufferOverflowException 需要写出块但输出缓冲区空间不足，点没有被追加
+	 */
+	public void append(int metricId, long timeMs, double value) {
+		Block block = block(metricId);
+		if (block.encoder.count() == blockPoints) {
+			write(metricId, block);
+		}
+		block.encoder.append(timeMs, value);
+	}
+
+	/**
+	 * 把所有未写出的块写入输出缓冲区
+	 *
+	 * @throws BufferOverflowException 输出缓冲区空间不足，已经写出的块不会重复写出
+	 */
+	public void flush() {
+		for (int id = 0; id < blocks.length; id++) {
+			Block block = blocks[id];
+			if (block != null && block.encoder.count() > 0) {
+				write(id, block);
+			}
+		}
+	}
+
+	/**
+	 * 写出的块数
+	 */
+	public long blocksWritten() {
+		return blocksWritten;
+	}
+
+	private Block block(int metricId) {
+		if (metricId < 0) {
+			throw new IllegalArgumentException("Metric id must be non-negative.");
+		}
+		if (metricId >= blocks.length) {
+			blocks = Arrays.copyOf(blocks, Math.max(blocks.length * 2, metricId + 1));
+		}
+		Block block = blocks[metricId];
+		if (block == null) {
+			block = new Block(blockPoints);
+			blocks[metricId] = block;
+		}
+		return block;
+	}
+
+	/**
+	 * 写出一个块并清空，空间不足时不修改任何状态
+	 */
+	private void write(int metricId, Block block) {
+		int length = block.encoder.encodedBytes(0);
+		if (out.remaining() < HEADER_BYTES + length) {
+			throw new BufferOverflowException();
+		}
+		block.encoder.finish();
+		out.putInt(metricId);
+		out.putInt(block.encoder.count());
+		out.putInt(length);
+		ByteBuffer data = block.data;
+		data.flip();
+		out.put(data);
+		data.clear();
+		block.encoder.reset(data);
+		blocksWritten++;
+	}
+
+	/**
+	 * 一个Metric的编码块
+	 */
+	private static final class Block {
+
+		// 编码数据
+		private final ByteBuffer data;
+		private final GorillaEncoder encoder;
+
+		private Block(int points) {
+			this.data = ByteBuffer.allocate(points * GorillaEncoder.maxBytesPerPoint() + 8);
+			this.encoder = new GorillaEncoder(data);
+		}
+
+	}
+
+}
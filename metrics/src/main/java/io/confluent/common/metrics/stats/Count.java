@@ -1,6 +1,8 @@
 package io.confluent.common.metrics.stats;
 
+import io.confluent.common.metrics.LongStat;
 import io.confluent.common.metrics.MetricConfig;
+import io.confluent.common.metrics.OptimisticMeasurable;
 
 import java.util.List;
 
@@ -10,12 +12,19 @@ import java.util.List;
  * @author wanggang
  *
  */
-public class Count extends SampledStat {
+public class Count extends SampledStat implements LongStat, OptimisticMeasurable {
 
 	public Count() {
 		super(0);
 	}
 
+	@Override
+	public void record(MetricConfig config, long value, long timeMs) {
+		Sample sample = window(config, timeMs);
+		sample.value += 1.0;
+		sample.eventCount += 1;
+	}
+
 	@Override
 	protected void update(Sample sample, MetricConfig config, double value, long now) {
 		sample.value += 1.0;
@@ -0,0 +1,241 @@
+package io.confluent.common.metrics.stats;
+
+import io.confluent.common.metrics.CompoundStat;
+import io.confluent.common.metrics.Measurable;
+import io.confluent.common.metrics.MetricConfig;
+import io.confluent.common.metrics.SizeEstimable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 组合信号，基于前向衰减（forward decay）蓄水池报告偏向最近数据的百分比
+ *
+ * 每条记录的权重为 exp(alpha * (t - L))，其中L为基准时间，按照 权重/随机数 的优先级
+ * 保留固定数量的样本，记录的复杂度为O(log size)，内存固定。
+ * 与 {@link Percentiles} 不同，它没有窗口，旧数据的影响平滑衰减，不会在窗口清除时跳变，
+ * 适合延迟分布持续漂移的服务，可以与直方图一起使用。
+ *
+ * @author wanggang
+ *
+ */
+public class DecayingPercentiles implements CompoundStat, SizeEstimable {
+
+	// 基准时间的最长调整间隔
+	private static final long MAX_RESCALE_INTERVAL_MS = 60 * 60 * 1000L;
+	// 调整前允许的最大指数，exp(300)远小于double上限
+	private static final double MAX_EXPONENT = 300.0;
+
+	private final Percentile[] percentiles;
+	// 衰减系数，单位为每秒
+	private final double alpha;
+	// 基准时间超过该间隔后重新调整，防止权重溢出
+	private final long rescaleIntervalMs;
+	// 样本值
+	private final double[] values;
+	// 样本权重
+	private final double[] weights;
+	// 样本优先级，按照最小堆组织
+	private final double[] priorities;
+	// 计算百分比时使用的缓冲区
+	private final double[] sortedValues;
+	private final double[] sortedWeights;
+	// 当前样本数
+	private int count;
+	// 基准时间
+	private long landmarkMs;
+
+	/**
+	 * @param size         蓄水池大小
+	 * @param alpha        衰减系数，单位为每秒，越大越偏向最近的数据，例如0.015
+	 * @param percentiles  报告的百分数
+	 */
+	public DecayingPercentiles(int size, double alpha, Percentile... percentiles) {
+		if (size < 1) {
+			throw new IllegalArgumentException("Reservoir size must be at least 1.");
+		}
+		if (alpha < 0.0) {
+			throw new IllegalArgumentException("Alpha must be non-negative.");
+		}
+		this.percentiles = percentiles;
+		this.alpha = alpha;
+		this.rescaleIntervalMs = alpha == 0.0 ? MAX_RESCALE_INTERVAL_MS : (long) Math.min(
+				MAX_RESCALE_INTERVAL_MS, 1000.0 * MAX_EXPONENT / alpha);
+		this.values = new double[size];
+		this.weights = new double[size];
+		this.priorities = new double[size];
+		this.sortedValues = new double[size];
+		this.sortedWeights = new double[size];
+		this.count = 0;
+		this.landmarkMs = -1;
+	}
+
+	@Override
+	public long estimatedBytes() {
+		return OBJECT_HEADER + 7 * REFERENCE + 32 + 5 * (ARRAY_HEADER + 8L * values.length);
+	}
+
+	@Override
+	public List<NamedMeasurable> stats() {
+		List<NamedMeasurable> ms = new ArrayList<NamedMeasurable>(this.percentiles.length);
+		for (Percentile percentile : this.percentiles) {
+			final double pct = percentile.percentile();
+			ms.add(new NamedMeasurable(percentile.name(), new Measurable() {
+				@Override
+				public double measure(MetricConfig config, long now) {
+					return value(config, now, pct / 100.0);
+				}
+			}));
+		}
+
+		return ms;
+	}
+
+	@Override
+	public void record(MetricConfig config, double value, long timeMs) {
+		if (landmarkMs < 0) {
+			landmarkMs = timeMs;
+		} else if (timeMs - landmarkMs > rescaleIntervalMs) {
+			rescale(timeMs);
+		}
+		double weight = Math.exp(alpha * (timeMs - landmarkMs) / 1000.0);
+		// 取值范围为(0, 1]，避免除零
+		double priority = weight / (1.0 - ThreadLocalRandom.current().nextDouble());
+		if (count < values.length) {
+			values[count] = value;
+			weights[count] = weight;
+			priorities[count] = priority;
+			siftUp(count++);
+		} else if (priority > priorities[0]) {
+			values[0] = value;
+			weights[0] = weight;
+			priorities[0] = priority;
+			siftDown(0);
+		}
+	}
+
+	/**
+	 * 计算百分比，按照样本权重加权
+	 *
+	 * @param config    配置
+	 * @param now       当前时间
+	 * @param quantile  分位数，取值0到1
+	 * @return
+	 */
+	public double value(MetricConfig config, long now, double quantile) {
+		if (count == 0) {
+			return Double.NaN;
+		}
+		double total = 0.0;
+		for (int i = 0; i < count; i++) {
+			sortedValues[i] = values[i];
+			sortedWeights[i] = weights[i];
+			total += weights[i];
+		}
+		sort(count);
+		double sum = 0.0;
+		for (int i = 0; i < count; i++) {
+			sum += sortedWeights[i];
+			if (sum / total >= quantile) {
+				return sortedValues[i];
+			}
+		}
+
+		return sortedValues[count - 1];
+	}
+
+	/**
+	 * 调整基准时间，所有权重和优先级同比缩小，堆的顺序不变
+	 *
+	 * @param timeMs 新的基准时间
+	 */
+	private void rescale(long timeMs) {
+		double factor = Math.exp(-alpha * (timeMs - landmarkMs) / 1000.0);
+		for (int i = 0; i < count; i++) {
+			weights[i] *= factor;
+			priorities[i] *= factor;
+		}
+		landmarkMs = timeMs;
+	}
+
+	private void siftUp(int i) {
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (priorities[parent] <= priorities[i]) {
+				break;
+			}
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int i) {
+		while (true) {
+			int left = 2 * i + 1;
+			if (left >= count) {
+				break;
+			}
+			int smallest = left + 1 < count && priorities[left + 1] < priorities[left] ? left + 1
+					: left;
+			if (priorities[i] <= priorities[smallest]) {
+				break;
+			}
+			swap(i, smallest);
+			i = smallest;
+		}
+	}
+
+	private void swap(int i, int j) {
+		double value = values[i];
+		values[i] = values[j];
+		values[j] = value;
+		double weight = weights[i];
+		weights[i] = weights[j];
+		weights[j] = weight;
+		double priority = priorities[i];
+		priorities[i] = priorities[j];
+		priorities[j] = priority;
+	}
+
+	/**
+	 * 按照样本值对缓冲区进行堆排序，权重跟随移动
+	 *
+	 * @param n 样本数
+	 */
+	private void sort(int n) {
+		for (int i = n / 2 - 1; i >= 0; i--) {
+			heapify(i, n);
+		}
+		for (int end = n - 1; end > 0; end--) {
+			swapSorted(0, end);
+			heapify(0, end);
+		}
+	}
+
+	private void heapify(int i, int n) {
+		while (true) {
+			int left = 2 * i + 1;
+			if (left >= n) {
+				break;
+			}
+			int largest = left + 1 < n && sortedValues[left + 1] > sortedValues[left] ? left + 1
+					: left;
+			if (sortedValues[i] >= sortedValues[largest]) {
+				break;
+			}
+			swapSorted(i, largest);
+			i = largest;
+		}
+	}
+
+	private void swapSorted(int i, int j) {
+		double value = sortedValues[i];
+		sortedValues[i] = sortedValues[j];
+		sortedValues[j] = value;
+		double weight = sortedWeights[i];
+		sortedWeights[i] = sortedWeights[j];
+		sortedWeights[j] = weight;
+	}
+
+}
@@ -0,0 +1,174 @@
+package io.confluent.common.metrics.stats;
+
+import io.confluent.common.metrics.KeyedStat;
+import io.confluent.common.metrics.MetricConfig;
+import io.confluent.common.metrics.SizeEstimable;
+import io.confluent.common.utils.Utils;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 采样信号 {@link SampledStat} 的去重计数，基于HyperLogLog近似统计
+ *
+ * 每个窗口保存 2^precision 个单字节寄存器，计算时按寄存器取最大值合并所有窗口，
+ * 内存与记录的数据量无关，标准误差约为 1.04 / sqrt(2^precision)。
+ * 带键的记录对键进行哈希，不带键的记录对数值本身进行哈希，哈希函数为 {@link Utils#murmur2(byte[])}。
+ *
+ * @author wanggang
+ *
+ */
+public class DistinctCount extends SampledStat implements KeyedStat {
+
+	// 寄存器下标占用的哈希位数
+	private final int precision;
+	// 寄存器数
+	private final int registers;
+	// 偏差修正系数
+	private final double alpha;
+	// 合并窗口时使用的寄存器
+	private final byte[] merged;
+	// 数值哈希时使用的缓冲区
+	private final byte[] scratch;
+
+	public DistinctCount() {
+		this(12);
+	}
+
+	/**
+	 * @param precision 寄存器下标占用的哈希位数，取值4到16，寄存器数为 2^precision
+	 */
+	public DistinctCount(int precision) {
+		super(0.0);
+		if (precision < 4 || precision > 16) {
+			throw new IllegalArgumentException("Precision must be between 4 and 16.");
+		}
+		this.precision = precision;
+		this.registers = 1 << precision;
+		this.alpha = alpha(registers);
+		this.merged = new byte[registers];
+		this.scratch = new byte[8];
+	}
+
+	@Override
+	public long estimatedBytes() {
+		return super.estimatedBytes() + 2 * ARRAY_HEADER + merged.length + scratch.length;
+	}
+
+	private static double alpha(int m) {
+		switch (m) {
+		case 16:
+			return 0.673;
+		case 32:
+			return 0.697;
+		case 64:
+			return 0.709;
+		default:
+			return 0.7213 / (1.0 + 1.079 / m);
+		}
+	}
+
+	@Override
+	public void record(MetricConfig config, String key, double value, long timeMs) {
+		Sample sample = window(config, timeMs);
+		offer((HllSample) sample, Utils.murmur2(Utils.utf8(key)));
+		sample.eventCount += 1;
+	}
+
+	@Override
+	protected void update(Sample sample, MetricConfig config, double value, long timeMs) {
+		long bits = Double.doubleToLongBits(value);
+		for (int i = 0; i < 8; i++) {
+			scratch[i] = (byte) (bits >>> (8 * i));
+		}
+		offer((HllSample) sample, Utils.murmur2(scratch));
+	}
+
+	/**
+	 * 更新哈希值对应的寄存器
+	 *
+	 * @param sample 样本
+	 * @param hash   哈希值
+	 */
+	private void offer(HllSample sample, int hash) {
+		// murmur2对只差几位的短输入（例如相近的数值）雪崩不充分，高位容易相同，
+		// 这里再做一次murmur3的fmix32混合，保证寄存器下标均匀
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		hash *= 0xc2b2ae35;
+		hash ^= hash >>> 16;
+		int index = hash >>> (32 - precision);
+		// 最低位哨兵保证前导零个数不超过剩余位数
+		int rank = Integer.numberOfLeadingZeros((hash << precision) | (1 << (precision - 1))) + 1;
+		if (rank > sample.registers[index]) {
+			sample.registers[index] = (byte) rank;
+		}
+	}
+
+	@Override
+	public double combine(List<Sample> samples, MetricConfig config, long now) {
+		Arrays.fill(merged, (byte) 0);
+		for (int s = 0; s < samples.size(); s++) {
+			byte[] current = ((HllSample) samples.get(s)).registers;
+			for (int i = 0; i < registers; i++) {
+				if (current[i] > merged[i]) {
+					merged[i] = current[i];
+				}
+			}
+		}
+		double sum = 0.0;
+		int zeros = 0;
+		for (int i = 0; i < registers; i++) {
+			sum += Math.scalb(1.0, -merged[i]);
+			if (merged[i] == 0) {
+				zeros++;
+			}
+		}
+		double estimate = alpha * registers * registers / sum;
+		if (estimate <= 2.5 * registers && zeros > 0) {
+			// 小基数时使用线性计数修正
+			estimate = registers * Math.log((double) registers / zeros);
+		} else if (estimate > 4294967296.0 / 30.0) {
+			// 32位哈希在大基数时的碰撞修正
+			estimate = -4294967296.0 * Math.log(1.0 - estimate / 4294967296.0);
+		}
+
+		return estimate;
+	}
+
+	@Override
+	protected HllSample newSample(long timeMs) {
+		return new HllSample(this.registers, timeMs);
+	}
+
+	/**
+	 * HyperLogLog寄存器样本
+	 *
+	 * @author wanggang
+	 *
+	 */
+	private static class HllSample extends SampledStat.Sample {
+
+		private final byte[] registers;
+
+		private HllSample(int registers, long now) {
+			super(0.0, now);
+			this.registers = new byte[registers];
+		}
+
+		@Override
+		public long estimatedBytes() {
+			return super.estimatedBytes() + SizeEstimable.REFERENCE + SizeEstimable.ARRAY_HEADER
+					+ registers.length;
+		}
+
+		@Override
+		public void reset(long now) {
+			super.reset(now);
+			Arrays.fill(registers, (byte) 0);
+		}
+
+	}
+
+}
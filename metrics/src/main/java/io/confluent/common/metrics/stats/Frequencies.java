@@ -0,0 +1,140 @@
+package io.confluent.common.metrics.stats;
+
+import io.confluent.common.metrics.CompoundStat;
+import io.confluent.common.metrics.Measurable;
+import io.confluent.common.metrics.MetricConfig;
+import io.confluent.common.metrics.MetricName;
+import io.confluent.common.metrics.stats.Percentiles.HistogramSample;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 组合信号，报告一组离散值（例如错误码、API版本）各自出现的比例
+ *
+ * 每个窗口只有一个常量桶宽的直方图 {@link Histogram.ConstantBinScheme}，
+ * [min, max) 被分成buckets个宽度相同的左闭右开区间，每个离散值落在各自的桶中，
+ * 一次记录就可以更新所有类别，不需要为每个类别创建一个 {@link Count}。
+ *
+ * @author wanggang
+ *
+ */
+public class Frequencies extends SampledStat implements CompoundStat {
+
+	private final Histogram.ConstantBinScheme binScheme;
+	private final Frequency[] frequencies;
+
+	/**
+	 * 创建布尔值的频率信号，false记为0.0，true记为1.0
+	 *
+	 * @param falseMetricName  false比例的Metric名称，为null时不报告
+	 * @param trueMetricName   true比例的Metric名称，为null时不报告
+	 */
+	public static Frequencies forBooleanValues(MetricName falseMetricName,
+			MetricName trueMetricName) {
+		List<Frequency> frequencies = new ArrayList<>();
+		if (falseMetricName != null) {
+			frequencies.add(new Frequency(falseMetricName, 0.0));
+		}
+		if (trueMetricName != null) {
+			frequencies.add(new Frequency(trueMetricName, 1.0));
+		}
+		if (frequencies.isEmpty()) {
+			throw new IllegalArgumentException("Must specify at least one metric name.");
+		}
+		return new Frequencies(2, 0.0, 2.0, frequencies.toArray(new Frequency[frequencies.size()]));
+	}
+
+	/**
+	 * @param buckets      [min, max) 之间的桶数
+	 * @param min          最小值
+	 * @param max          最大值，不包含
+	 * @param frequencies  报告的频率，离散值必须在 [min, max) 之间
+	 */
+	public Frequencies(int buckets, double min, double max, Frequency... frequencies) {
+		super(0.0);
+		if (max <= min) {
+			throw new IllegalArgumentException("The maximum value " + max
+					+ " must be greater than the minimum value " + min);
+		}
+		if (buckets < 1) {
+			throw new IllegalArgumentException("Must be at least 1 bucket.");
+		}
+		if (buckets < frequencies.length) {
+			throw new IllegalArgumentException("More frequencies than buckets.");
+		}
+		for (Frequency frequency : frequencies) {
+			if (frequency.centerValue() < min || frequency.centerValue() >= max) {
+				throw new IllegalArgumentException("The frequency centered at '"
+						+ frequency.centerValue() + "' is not within the range [" + min + "," + max
+						+ ")");
+			}
+		}
+		// 两端各多一个桶，存放越界的值
+		this.binScheme = new Histogram.ConstantBinScheme(buckets + 2, min, max);
+		this.frequencies = frequencies;
+	}
+
+	@Override
+	public List<NamedMeasurable> stats() {
+		List<NamedMeasurable> ms = new ArrayList<NamedMeasurable>(this.frequencies.length);
+		for (Frequency frequency : this.frequencies) {
+			final double center = frequency.centerValue();
+			ms.add(new NamedMeasurable(frequency.name(), new Measurable() {
+				@Override
+				public double measure(MetricConfig config, long now) {
+					return frequency(config, now, center);
+				}
+			}));
+		}
+
+		return ms;
+	}
+
+	/**
+	 * 计算离散值出现的比例
+	 *
+	 * @param config       配置
+	 * @param now          当前时间
+	 * @param centerValue  离散值
+	 * @return 取值0到1，没有记录时为0
+	 */
+	public double frequency(MetricConfig config, long now, double centerValue) {
+		purgeObsoleteSamples(config, now);
+		long totalCount = 0;
+		for (int s = 0; s < this.samples.size(); s++) {
+			totalCount += this.samples.get(s).eventCount;
+		}
+		if (totalCount == 0) {
+			return 0.0;
+		}
+		int bin = binScheme.toBin(centerValue);
+		double count = 0.0;
+		for (int s = 0; s < this.samples.size(); s++) {
+			HistogramSample sample = (HistogramSample) this.samples.get(s);
+			count += sample.histogram.count(bin);
+		}
+
+		return count / totalCount;
+	}
+
+	@Override
+	public double combine(List<Sample> samples, MetricConfig config, long now) {
+		long totalCount = 0;
+		for (int s = 0; s < samples.size(); s++) {
+			totalCount += samples.get(s).eventCount;
+		}
+		return totalCount;
+	}
+
+	@Override
+	protected HistogramSample newSample(long timeMs) {
+		return new HistogramSample(this.binScheme, null, timeMs);
+	}
+
+	@Override
+	protected void update(Sample sample, MetricConfig config, double value, long timeMs) {
+		((HistogramSample) sample).histogram.record(value);
+	}
+
+}
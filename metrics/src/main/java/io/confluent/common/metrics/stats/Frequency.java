@@ -0,0 +1,32 @@
+package io.confluent.common.metrics.stats;
+
+import io.confluent.common.metrics.MetricName;
+
+/**
+ * 频率模型，表示某个离散值出现的比例
+ *
+ * @author wanggang
+ *
+ */
+public class Frequency {
+
+	// 指标名称信息
+	private final MetricName name;
+	// 离散值，落在同一个桶中的值都计入该频率
+	private final double centerValue;
+
+	public Frequency(MetricName name, double centerValue) {
+		super();
+		this.name = name;
+		this.centerValue = centerValue;
+	}
+
+	public MetricName name() {
+		return this.name;
+	}
+
+	public double centerValue() {
+		return this.centerValue;
+	}
+
+}
@@ -1,25 +1,90 @@
 package io.confluent.common.metrics.stats;
 
+import io.confluent.common.metrics.SizeEstimable;
+
+import java.nio.FloatBuffer;
+
 /**
  * 直方图模型
  *
  * @author wanggang
  *
  */
-public class Histogram {
+public class Histogram implements SizeEstimable {
 
 	private final BinScheme binScheme;
+	// 堆内的桶，使用堆外存储时为null
 	private final float[] hist;
+	// 堆外的桶，使用堆内存储时为null
+	private final FloatBuffer buffer;
+	// 堆外存储区，使用堆内存储时为null
+	private final HistogramArena arena;
+	private final int bins;
 	private double count;
 
 	public Histogram(BinScheme binScheme) {
-		this.hist = new float[binScheme.bins()];
+		this(binScheme, null);
+	}
+
+	/**
+	 * @param binScheme 容器模型
+	 * @param arena     堆外存储区，为null时桶保存在堆内
+	 */
+	public Histogram(BinScheme binScheme, HistogramArena arena) {
+		this.bins = binScheme.bins();
+		this.hist = arena == null ? new float[bins] : null;
+		this.buffer = arena == null ? null : arena.allocate(bins);
+		this.arena = arena;
 		this.count = 0.0f;
 		this.binScheme = binScheme;
 	}
 
+	/**
+	 * 估计占用的堆内存，堆外的桶由 {@link HistogramArena} 统计，这里只计算缓冲区视图对象
+	 */
+	@Override
+	public long estimatedBytes() {
+		long bytes = OBJECT_HEADER + 4 * REFERENCE + 4 + 8;
+		if (hist != null) {
+			bytes += ARRAY_HEADER + 4L * bins;
+		} else {
+			bytes += OBJECT_HEADER + 32;
+		}
+		return bytes;
+	}
+
+	/**
+	 * 把堆外的桶归还给存储区，之后不能再使用该直方图，堆内直方图不做任何事
+	 */
+	public void release() {
+		if (buffer != null) {
+			arena.release(buffer);
+		}
+	}
+
 	public void record(double value) {
-		this.hist[binScheme.toBin(value)] += 1.0f;
+		increment(binScheme.toBin(value));
+	}
+
+	/**
+	 * 记录整数值，常量桶宽模型的边界和桶宽都是整数时使用整数运算定位桶
+	 *
+	 * @param value 记录值
+	 */
+	public void record(long value) {
+		if (binScheme instanceof ConstantBinScheme) {
+			increment(((ConstantBinScheme) binScheme).toBin(value));
+		} else {
+			increment(binScheme.toBin(value));
+		}
+	}
+
+	private void increment(int bin) {
+		if (hist != null) {
+			this.hist[bin] += 1.0f;
+		} else {
+			this.buffer.put(bin, this.buffer.get(bin) + 1.0f);
+		}
 		this.count += 1.0f;
 	}
 
@@ -29,8 +94,8 @@ public class Histogram {
 		}
 		float sum = 0.0f;
 		float quant = (float) quantile;
-		for (int i = 0; i < this.hist.length - 1; i++) {
-			sum += this.hist[i];
+		for (int i = 0; i < this.bins - 1; i++) {
+			sum += count(i);
 			if (sum / count > quant) {
 				return binScheme.fromBin(i);
 			}
@@ -38,13 +103,36 @@ public class Histogram {
 		return Float.POSITIVE_INFINITY;
 	}
 
+	/**
+	 * 某个桶的计数
+	 *
+	 * @param bin 桶下标
+	 */
+	public float count(int bin) {
+		return hist != null ? hist[bin] : buffer.get(bin);
+	}
+
+	/**
+	 * 所有桶的计数，使用堆外存储时返回一份拷贝
+	 */
 	public float[] counts() {
-		return this.hist;
+		if (hist != null) {
+			return this.hist;
+		}
+		float[] copy = new float[bins];
+		for (int i = 0; i < bins; i++) {
+			copy[i] = buffer.get(i);
+		}
+		return copy;
 	}
 
 	public void clear() {
-		for (int i = 0; i < this.hist.length; i++) {
-			this.hist[i] = 0.0f;
+		for (int i = 0; i < this.bins; i++) {
+			if (hist != null) {
+				this.hist[i] = 0.0f;
+			} else {
+				this.buffer.put(i, 0.0f);
+			}
 		}
 		this.count = 0;
 	}
@@ -52,15 +140,15 @@ public class Histogram {
 	@Override
 	public String toString() {
 		StringBuilder b = new StringBuilder('{');
-		for (int i = 0; i < this.hist.length - 1; i++) {
+		for (int i = 0; i < this.bins - 1; i++) {
 			b.append(String.format("%.10f", binScheme.fromBin(i)));
 			b.append(':');
-			b.append(String.format("%.0f", this.hist[i]));
+			b.append(String.format("%.0f", count(i)));
 			b.append(',');
 		}
 		b.append(Float.POSITIVE_INFINITY);
 		b.append(':');
-		b.append(this.hist[this.hist.length - 1]);
+		b.append(count(this.bins - 1));
 		b.append('}');
 		return b.toString();
 	}
@@ -110,6 +198,10 @@ public class Histogram {
 		private final int bins;
 		// 桶宽，除了边界的两个桶
 		private final double bucketWidth;
+		// 整数的最小值、最大值和桶宽，桶宽不是整数时为0，只能使用浮点运算
+		private final long longMin;
+		private final long longMax;
+		private final long longWidth;
 
 		public ConstantBinScheme(int bins, double min, double max) {
 			if (bins < 2) {
@@ -120,6 +212,19 @@ public class Histogram {
 			this.bins = bins;
 			// bins=2时，bucketWidth=Infinity
 			this.bucketWidth = (max - min) / (bins - 2);
+			if (isLong(min) && isLong(max) && isLong(bucketWidth) && bucketWidth >= 1.0) {
+				this.longMin = (long) min;
+				this.longMax = (long) max;
+				this.longWidth = (long) bucketWidth;
+			} else {
+				this.longMin = 0;
+				this.longMax = 0;
+				this.longWidth = 0;
+			}
+		}
+
+		private static boolean isLong(double x) {
+			return Math.abs(x) < (1L << 53) && x == Math.rint(x);
 		}
 
 		@Override
@@ -149,6 +254,24 @@ public class Histogram {
 			}
 		}
 
+		/**
+		 * 整数值所在的桶，与 {@link #toBin(double)} 的结果相同
+		 *
+		 * @param x 整数值
+		 */
+		public int toBin(long x) {
+			if (longWidth == 0) {
+				return toBin((double) x);
+			}
+			if (x < longMin) {
+				return 0;
+			} else if (x > longMax) {
+				return bins - 1;
+			} else {
+				return (int) ((x - longMin) / longWidth) + 1;
+			}
+		}
+
 	}
 
 	/**
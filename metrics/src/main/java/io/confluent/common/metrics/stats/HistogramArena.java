@@ -0,0 +1,125 @@
+package io.confluent.common.metrics.stats;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 直方图的堆外存储区，从直接内存（direct ByteBuffer）大块中切分出直方图的桶
+ *
+ * 大量 {@link Percentiles} 的桶数组长期存活在老年代中，会增加GC的标记开销，
+ * 放到堆外后GC只需要扫描很少的大块对象。一般由
+ * {@link io.confluent.common.metrics.Metrics#histogramArena()} 统一管理，与仓库的生命周期相同。
+ *
+ * 大块中切分出的空间不会还给系统，通过 {@link #release(FloatBuffer)} 归还后按照桶数放入空闲列表，
+ * 之后相同桶数的直方图优先复用；单独申请的大直方图归还后由GC回收。
+ *
+ * @author wanggang
+ *
+ */
+public class HistogramArena {
+
+	// 每个大块的字节数
+	private final int slabSizeInBytes;
+	// 当前用于切分的大块
+	private ByteBuffer slab;
+	// 已经切分出去的字节数
+	private long allocatedBytes;
+	// 已经申请的直接内存字节数
+	private long reservedBytes;
+	// 按照桶数划分的空闲列表
+	private final Map<Integer, List<FloatBuffer>> freeLists;
+
+	public HistogramArena() {
+		this(1024 * 1024);
+	}
+
+	/**
+	 * @param slabSizeInBytes 每次申请的直接内存大小，超过该大小的直方图单独申请
+	 */
+	public HistogramArena(int slabSizeInBytes) {
+		if (slabSizeInBytes < 4) {
+			throw new IllegalArgumentException("Slab size must be at least 4 bytes.");
+		}
+		this.slabSizeInBytes = slabSizeInBytes;
+		this.allocatedBytes = 0;
+		this.reservedBytes = 0;
+		this.freeLists = new HashMap<>();
+	}
+
+	/**
+	 * 切分出一个直方图的桶，初始值为0，优先复用已经归还的相同桶数的空间
+	 *
+	 * @param bins 桶数
+	 * @return 本地字节序的浮点缓冲区
+	 */
+	public synchronized FloatBuffer allocate(int bins) {
+		int bytes = bins * 4;
+		List<FloatBuffer> free = freeLists.get(bins);
+		if (free != null && !free.isEmpty()) {
+			FloatBuffer reused = free.remove(free.size() - 1);
+			for (int i = 0; i < bins; i++) {
+				reused.put(i, 0.0f);
+			}
+			allocatedBytes += bytes;
+			return reused;
+		}
+		ByteBuffer buffer;
+		if (bytes > slabSizeInBytes) {
+			buffer = ByteBuffer.allocateDirect(bytes);
+			reservedBytes += bytes;
+		} else {
+			if (slab == null || slab.remaining() < bytes) {
+				slab = ByteBuffer.allocateDirect(slabSizeInBytes);
+				reservedBytes += slabSizeInBytes;
+			}
+			slab.limit(slab.position() + bytes);
+			buffer = slab.slice();
+			slab.position(slab.limit());
+			slab.limit(slab.capacity());
+		}
+		allocatedBytes += bytes;
+		return buffer.order(ByteOrder.nativeOrder()).asFloatBuffer();
+	}
+
+	/**
+	 * 归还一个直方图的桶，归还后调用方不能再使用该缓冲区
+	 *
+	 * @param buffer {@link #allocate(int)} 返回的缓冲区
+	 */
+	public synchronized void release(FloatBuffer buffer) {
+		int bins = buffer.capacity();
+		int bytes = bins * 4;
+		allocatedBytes -= bytes;
+		if (bytes > slabSizeInBytes) {
+			// 单独申请的直接内存不复用，由GC回收
+			reservedBytes -= bytes;
+			return;
+		}
+		List<FloatBuffer> free = freeLists.get(bins);
+		if (free == null) {
+			free = new ArrayList<>();
+			freeLists.put(bins, free);
+		}
+		free.add(buffer);
+	}
+
+	/**
+	 * 已经切分给直方图并且没有归还的字节数
+	 */
+	public synchronized long allocatedBytes() {
+		return allocatedBytes;
+	}
+
+	/**
+	 * 已经申请的直接内存字节数
+	 */
+	public synchronized long reservedBytes() {
+		return reservedBytes;
+	}
+
+}
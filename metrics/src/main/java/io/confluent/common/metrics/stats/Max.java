@@ -1,6 +1,7 @@
 package io.confluent.common.metrics.stats;
 
 import io.confluent.common.metrics.MetricConfig;
+import io.confluent.common.metrics.OptimisticMeasurable;
 
 import java.util.List;
 
@@ -10,7 +11,7 @@ import java.util.List;
  * @author wanggang
  *
  */
-public final class Max extends SampledStat {
+public final class Max extends SampledStat implements OptimisticMeasurable {
 
 	public Max() {
 		super(Double.NEGATIVE_INFINITY);
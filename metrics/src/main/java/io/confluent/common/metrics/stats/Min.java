@@ -1,6 +1,7 @@
 package io.confluent.common.metrics.stats;
 
 import io.confluent.common.metrics.MetricConfig;
+import io.confluent.common.metrics.OptimisticMeasurable;
 
 import java.util.List;
 
@@ -10,7 +11,7 @@ import java.util.List;
  * @author wanggang
  *
  */
-public class Min extends SampledStat {
+public class Min extends SampledStat implements OptimisticMeasurable {
 
 	public Min() {
 		super(Double.MIN_VALUE);
@@ -1,8 +1,11 @@
 package io.confluent.common.metrics.stats;
 
 import io.confluent.common.metrics.CompoundStat;
+import io.confluent.common.metrics.LongStat;
 import io.confluent.common.metrics.Measurable;
 import io.confluent.common.metrics.MetricConfig;
+import io.confluent.common.metrics.Releasable;
+import io.confluent.common.metrics.SizeEstimable;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -13,11 +16,13 @@ import java.util.List;
  * @author wanggang
  *
  */
-public class Percentiles extends SampledStat implements CompoundStat {
+public class Percentiles extends SampledStat implements CompoundStat, LongStat, Releasable {
 
 	private final int buckets;
 	private final Percentile[] percentiles;
 	private final Histogram.BinScheme binScheme;
+	// 直方图的堆外存储区，为null时保存在堆内，归还资源后置为null
+	private HistogramArena arena;
 
 	public Percentiles(int sizeInBytes, double max, BucketSizing bucketing,
 			Percentile... percentiles) {
@@ -26,7 +31,21 @@ public class Percentiles extends SampledStat implements CompoundStat {
 
 	public Percentiles(int sizeInBytes, double min, double max, BucketSizing bucketing,
 			Percentile... percentiles) {
+		this(sizeInBytes, min, max, bucketing, null, percentiles);
+	}
+
+	/**
+	 * @param sizeInBytes  每个窗口直方图的字节数，桶数为 sizeInBytes / 4
+	 * @param min          最小值
+	 * @param max          最大值
+	 * @param bucketing    桶宽模型
+	 * @param arena        直方图的堆外存储区，为null时保存在堆内
+	 * @param percentiles  报告的百分数
+	 */
+	public Percentiles(int sizeInBytes, double min, double max, BucketSizing bucketing,
+			HistogramArena arena, Percentile... percentiles) {
 		super(0.0);
+		this.arena = arena;
 		this.percentiles = percentiles;
 		this.buckets = sizeInBytes / 4;
 		if (bucketing == BucketSizing.CONSTANT) {
@@ -71,8 +90,7 @@ public class Percentiles extends SampledStat implements CompoundStat {
 		for (int b = 0; b < buckets; b++) {
 			for (int s = 0; s < this.samples.size(); s++) {
 				HistogramSample sample = (HistogramSample) this.samples.get(s);
-				float[] hist = sample.histogram.counts();
-				sum += hist[b];
+				sum += sample.histogram.count(b);
 				if (sum / count > quant) {
 					return binScheme.fromBin(b);
 				}
@@ -89,7 +107,14 @@ public class Percentiles extends SampledStat implements CompoundStat {
 
 	@Override
 	protected HistogramSample newSample(long timeMs) {
-		return new HistogramSample(this.binScheme, timeMs);
+		return new HistogramSample(this.binScheme, this.arena, timeMs);
+	}
+
+	@Override
+	public void record(MetricConfig config, long value, long timeMs) {
+		Sample sample = window(config, timeMs);
+		((HistogramSample) sample).histogram.record(value);
+		sample.eventCount += 1;
 	}
 
 	@Override
@@ -98,23 +123,48 @@ public class Percentiles extends SampledStat implements CompoundStat {
 		hist.histogram.record(value);
 	}
 
+	/**
+	 * 把所有样本的堆外直方图归还给存储区并删除样本，之后的记录使用堆内直方图，
+	 * 被淘汰的Sensor继续记录时不会再占用存储区
+	 */
+	@Override
+	public void release() {
+		for (Sample sample : this.samples) {
+			((HistogramSample) sample).histogram.release();
+		}
+		clear();
+		this.arena = null;
+	}
+
 	public static enum BucketSizing {
 		CONSTANT, LINEAR
 	}
 
 	/**
-	 * 直方图样本信号
+	 * 直方图样本信号，{@link Frequencies} 也使用该样本
 	 *
 	 * @author wanggang
 	 *
 	 */
-	private static class HistogramSample extends SampledStat.Sample {
+	static class HistogramSample extends SampledStat.Sample {
 
-		private final Histogram histogram;
+		final Histogram histogram;
 
-		private HistogramSample(Histogram.BinScheme scheme, long now) {
+		HistogramSample(Histogram.BinScheme scheme, HistogramArena arena, long now) {
 			super(0.0, now);
-			this.histogram = new Histogram(scheme);
+			this.histogram = new Histogram(scheme, arena);
+		}
+
+		@Override
+		public long estimatedBytes() {
+			return super.estimatedBytes() + SizeEstimable.REFERENCE + histogram.estimatedBytes();
+		}
+
+		@Override
+		public void reset(long now) {
+			super.reset(now);
+			// 重置窗口时同时清空直方图，否则旧窗口的计数会留在新窗口中
+			this.histogram.clear();
 		}
 
 	}
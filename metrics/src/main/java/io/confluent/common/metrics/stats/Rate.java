@@ -1,7 +1,9 @@
 package io.confluent.common.metrics.stats;
 
+import io.confluent.common.metrics.LongStat;
 import io.confluent.common.metrics.MeasurableStat;
 import io.confluent.common.metrics.MetricConfig;
+import io.confluent.common.metrics.OptimisticMeasurable;
 
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -17,7 +19,7 @@ import java.util.concurrent.TimeUnit;
  * @author wanggang
  *
  */
-public class Rate implements MeasurableStat {
+public class Rate implements MeasurableStat, LongStat, OptimisticMeasurable {
 
 	private final TimeUnit unit;
 	private final SampledStat stat;
@@ -48,6 +50,15 @@ public class Rate implements MeasurableStat {
 		this.stat.record(config, value, timeMs);
 	}
 
+	@Override
+	public void record(MetricConfig config, long value, long timeMs) {
+		if (this.stat instanceof LongStat) {
+			((LongStat) this.stat).record(config, value, timeMs);
+		} else {
+			this.stat.record(config, value, timeMs);
+		}
+	}
+
 	@Override
 	public double measure(MetricConfig config, long now) {
 		double value = stat.measure(config, now);
@@ -55,6 +66,19 @@ public class Rate implements MeasurableStat {
 		return value / elapsed;
 	}
 
+	@Override
+	public boolean peekable(MetricConfig config, long now) {
+		return stat instanceof OptimisticMeasurable
+				&& ((OptimisticMeasurable) stat).peekable(config, now);
+	}
+
+	@Override
+	public double peek(MetricConfig config, long now) {
+		double value = ((OptimisticMeasurable) stat).peek(config, now);
+		double elapsed = convert(now - stat.oldest(now).lastWindowMs);
+		return value / elapsed;
+	}
+
 	private double convert(long time) {
 		switch (unit) {
 		case NANOSECONDS:
@@ -82,12 +106,20 @@ public class Rate implements MeasurableStat {
 	 * @author wanggang
 	 *
 	 */
-	public static class SampledTotal extends SampledStat {
+	public static class SampledTotal extends SampledStat implements LongStat,
+			OptimisticMeasurable {
 
 		public SampledTotal() {
 			super(0.0d);
 		}
 
+		@Override
+		public void record(MetricConfig config, long value, long timeMs) {
+			Sample sample = window(config, timeMs);
+			sample.value += value;
+			sample.eventCount += 1;
+		}
+
 		@Override
 		protected void update(Sample sample, MetricConfig config, double value, long timeMs) {
 			sample.value += value;
@@ -2,6 +2,7 @@ package io.confluent.common.metrics.stats;
 
 import io.confluent.common.metrics.MeasurableStat;
 import io.confluent.common.metrics.MetricConfig;
+import io.confluent.common.metrics.SizeEstimable;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -16,7 +17,7 @@ import java.util.List;
  * @author wanggang
  *
  */
-public abstract class SampledStat implements MeasurableStat {
+public abstract class SampledStat implements MeasurableStat, SizeEstimable {
 
 	// 样本集合
 	protected List<Sample> samples;
@@ -39,13 +40,25 @@ public abstract class SampledStat implements MeasurableStat {
 	 */
 	@Override
 	public void record(MetricConfig config, double value, long timeMs) {
-		Sample sample = current(timeMs);
+		Sample sample = window(config, timeMs);
+		update(sample, config, value, timeMs);
+		sample.eventCount += 1;
+	}
+
+	/**
+	 * 获取记录时间所在的窗口样本，当前样本完成时前进到下一个样本
+	 *
+	 * @param config  配置
+	 * @param timeMs  记录时间
+	 * @return
+	 */
+	protected Sample window(MetricConfig config, long timeMs) {
+		Sample sample = current(windowStart(config, timeMs));
 		if (sample.isComplete(timeMs, config)) {
 			// 采样完成，需要进行下一步操作
 			sample = advance(config, timeMs);
 		}
-		update(sample, config, value, timeMs);
-		sample.eventCount += 1;
+		return sample;
 	}
 
 	/**
@@ -56,18 +69,34 @@ public abstract class SampledStat implements MeasurableStat {
 	 * @return
 	 */
 	private Sample advance(MetricConfig config, long timeMs) {
+		long windowStart = windowStart(config, timeMs);
 		this.current = (this.current + 1) % config.samples();
 		if (this.current >= samples.size()) {
-			Sample sample = newSample(timeMs);
+			Sample sample = newSample(windowStart);
 			this.samples.add(sample);
 			return sample;
 		} else {
-			Sample sample = current(timeMs);
-			sample.reset(timeMs);
+			Sample sample = current(windowStart);
+			sample.reset(windowStart);
 			return sample;
 		}
 	}
 
+	/**
+	 * 计算窗口起点，对齐时为 floor(timeMs / timeWindowMs) * timeWindowMs，否则就是当前时间
+	 *
+	 * @param config  配置
+	 * @param timeMs  时间
+	 * @return
+	 */
+	protected static long windowStart(MetricConfig config, long timeMs) {
+		if (!config.alignWindows()) {
+			return timeMs;
+		}
+		long windowMs = config.timeWindowMs();
+		return (timeMs / windowMs) * windowMs;
+	}
+
 	/**
 	 * 获取新的样本
 	 *
@@ -90,6 +119,37 @@ public abstract class SampledStat implements MeasurableStat {
 		return combine(this.samples, config, now);
 	}
 
+	/**
+	 * 是否可以不修改样本地计算，即已经有样本并且没有过期的样本，
+	 * combine没有副作用的子类可以据此实现 {@link io.confluent.common.metrics.OptimisticMeasurable}
+	 *
+	 * @param config   配置
+	 * @param now      当前时间
+	 */
+	public boolean peekable(MetricConfig config, long now) {
+		long expireAge = config.samples() * config.timeWindowMs();
+		int size = samples.size();
+		if (size == 0) {
+			return false;
+		}
+		for (int i = 0; i < size; i++) {
+			if (now - this.samples.get(i).lastWindowMs >= expireAge) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 不清理过期样本直接计算，只在 {@link #peekable(MetricConfig, long)} 返回true时调用
+	 *
+	 * @param config   配置
+	 * @param now      当前时间
+	 */
+	public double peek(MetricConfig config, long now) {
+		return combine(this.samples, config, now);
+	}
+
 	/**
 	 * 获取当前样本
 	 *
@@ -103,6 +163,14 @@ public abstract class SampledStat implements MeasurableStat {
 		return this.samples.get(this.current);
 	}
 
+	/**
+	 * 删除所有样本，之后的记录重新创建样本
+	 */
+	protected void clear() {
+		this.samples.clear();
+		this.current = 0;
+	}
+
 	/**
 	 * 获取最老的样本
 	 *
@@ -144,6 +212,20 @@ public abstract class SampledStat implements MeasurableStat {
 	 */
 	public abstract double combine(List<Sample> samples, MetricConfig config, long now);
 
+	/**
+	 * 估计信号自身和所有样本占用的字节数，子类有额外的数组时需要累加
+	 */
+	@Override
+	public long estimatedBytes() {
+		// 对象、样本列表以及列表的数组
+		long bytes = OBJECT_HEADER + 16 + OBJECT_HEADER + ARRAY_HEADER + REFERENCE
+				* samples.size();
+		for (int i = 0; i < samples.size(); i++) {
+			bytes += samples.get(i).estimatedBytes();
+		}
+		return bytes;
+	}
+
 	/**
 	 *  清理过时的样本
 	 *
@@ -155,7 +237,7 @@ public abstract class SampledStat implements MeasurableStat {
 		for (int i = 0; i < samples.size(); i++) {
 			Sample sample = this.samples.get(i);
 			if (now - sample.lastWindowMs >= expireAge) {
-				sample.reset(now);
+				sample.reset(windowStart(config, now));
 			}
 		}
 	}
@@ -184,6 +266,13 @@ public abstract class SampledStat implements MeasurableStat {
 			this.value = initialValue;
 		}
 
+		/**
+		 * 估计样本占用的字节数，子类有额外的字段时需要累加
+		 */
+		public long estimatedBytes() {
+			return SizeEstimable.OBJECT_HEADER + 32;
+		}
+
 		/**
 		 * 重置
 		 *
@@ -0,0 +1,135 @@
+package io.confluent.common.metrics.stats;
+
+import io.confluent.common.metrics.MeasurableStat;
+import io.confluent.common.metrics.MetricConfig;
+import io.confluent.common.metrics.SizeEstimable;
+
+/**
+ * 真正的滑动窗口极值，窗口长度为 samples * timeWindowMs
+ *
+ * 与 {@link Max}、{@link Min} 按窗口保留一个值不同，这里用单调队列保存窗口内可能成为极值的记录，
+ * 极值在超出窗口的那一刻就会消失，不会在整个窗口周期内停留在旧的峰值上。
+ * 队列保存在基本类型的环形数组中，记录的均摊复杂度为O(1)，读取为O(1)。
+ *
+ * 窗口按照时间等分为 {@link #SUB_WINDOWS} 个子窗口，同一个子窗口中被队尾支配的新值直接丢弃，
+ * 队列长度因此不超过子窗口的个数，极值消失的时间误差不超过一个子窗口。
+ * 记录过期后队列数组会收缩。
+ *
+ * @author wanggang
+ *
+ */
+public abstract class SlidingExtremum implements MeasurableStat, SizeEstimable {
+
+	// 每个窗口划分的子窗口个数
+	public static final int SUB_WINDOWS = 64;
+	// 队列数组的初始长度，收缩时不小于该长度
+	private static final int MIN_CAPACITY = 16;
+
+	// 队列中的值，从头到尾单调
+	private double[] values;
+	// 队列中的记录时间
+	private long[] times;
+	// 队头下标
+	private int head;
+	// 队列长度
+	private int size;
+
+	protected SlidingExtremum() {
+		this.values = new double[MIN_CAPACITY];
+		this.times = new long[MIN_CAPACITY];
+		this.head = 0;
+		this.size = 0;
+	}
+
+	/**
+	 * 新值是否让队尾的旧值不可能再成为极值
+	 *
+	 * @param value     新值
+	 * @param existing  队尾的值
+	 */
+	protected abstract boolean supersedes(double value, double existing);
+
+	/**
+	 * 窗口内没有记录时的值
+	 */
+	protected abstract double emptyValue();
+
+	@Override
+	public void record(MetricConfig config, double value, long timeMs) {
+		evict(config, timeMs);
+		while (size > 0 && supersedes(value, values[index(size - 1)])) {
+			size--;
+		}
+		if (size > 0) {
+			// 与队尾在同一个子窗口且没有取代队尾，新值不可能在队尾之前成为极值
+			long subWindowMs = Math.max(1, config.samples() * config.timeWindowMs() / SUB_WINDOWS);
+			if (times[index(size - 1)] / subWindowMs == timeMs / subWindowMs) {
+				return;
+			}
+		}
+		if (size == values.length) {
+			resize(values.length * 2);
+		}
+		int tail = index(size);
+		values[tail] = value;
+		times[tail] = timeMs;
+		size++;
+	}
+
+	/**
+	 * 估计占用的字节数，按照当前数组长度计算
+	 */
+	@Override
+	public long estimatedBytes() {
+		return OBJECT_HEADER + 2 * REFERENCE + 8 + 2 * ARRAY_HEADER + 16L * values.length;
+	}
+
+	@Override
+	public double measure(MetricConfig config, long now) {
+		evict(config, now);
+		return size == 0 ? emptyValue() : values[head];
+	}
+
+	/**
+	 * 移除窗口之外的记录，剩余记录不足数组长度的四分之一时收缩数组
+	 *
+	 * @param config  配置
+	 * @param now     当前时间
+	 */
+	private void evict(MetricConfig config, long now) {
+		long windowMs = config.samples() * config.timeWindowMs();
+		while (size > 0 && now - times[head] >= windowMs) {
+			head = (head + 1) & (values.length - 1);
+			size--;
+		}
+		int capacity = values.length;
+		while (capacity > MIN_CAPACITY && size < capacity / 4) {
+			capacity /= 2;
+		}
+		if (capacity < values.length) {
+			resize(capacity);
+		}
+	}
+
+	private int index(int offset) {
+		return (head + offset) & (values.length - 1);
+	}
+
+	/**
+	 * 调整容量，保持2的幂次
+	 *
+	 * @param capacity 新的容量，不小于队列长度
+	 */
+	private void resize(int capacity) {
+		double[] newValues = new double[capacity];
+		long[] newTimes = new long[capacity];
+		for (int i = 0; i < size; i++) {
+			newValues[i] = values[index(i)];
+			newTimes[i] = times[index(i)];
+		}
+		values = newValues;
+		times = newTimes;
+		head = 0;
+	}
+
+}
@@ -0,0 +1,21 @@
+package io.confluent.common.metrics.stats;
+
+/**
+ * 滑动窗口 {@link SlidingExtremum} 的最大值
+ *
+ * @author wanggang
+ *
+ */
+public final class SlidingMax extends SlidingExtremum {
+
+	@Override
+	protected boolean supersedes(double value, double existing) {
+		return value >= existing;
+	}
+
+	@Override
+	protected double emptyValue() {
+		return Double.NEGATIVE_INFINITY;
+	}
+
+}
@@ -0,0 +1,311 @@
+package io.confluent.common.metrics.stats;
+
+import io.confluent.common.metrics.CompoundStat;
+import io.confluent.common.metrics.KeyedStat;
+import io.confluent.common.metrics.Measurable;
+import io.confluent.common.metrics.MetricConfig;
+import io.confluent.common.metrics.MetricName;
+import io.confluent.common.metrics.Sensor;
+import io.confluent.common.metrics.SizeEstimable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 组合信号，基于Space-Saving算法近似统计每个窗口中值最大的前K个键（heavy hitters）
+ *
+ * 每个窗口最多跟踪capacity个键，内存固定；键满后新键替换当前最小的计数器，
+ * 并把被替换的计数记为误差。capacity越大于K，结果越准确。
+ * 第i个Metric报告第i大的值，键和值通过 {@link Sensor#top(TopK)} 在传感器的锁中查询。
+ * 不带键的记录会被忽略。传感器开启采样时每条记录的增量乘以采样率，总和与次数仍然是无偏的估计。
+ *
+ * @author wanggang
+ *
+ */
+public class TopK extends SampledStat implements CompoundStat, KeyedStat {
+
+	// 每个窗口跟踪的最大键数
+	private final int capacity;
+	// 按照值的总和还是次数统计
+	private final Mode mode;
+	// 按照名次报告的Metric名称
+	private final MetricName[] ranks;
+
+	/**
+	 * @param capacity 每个窗口跟踪的最大键数，不能小于名次数
+	 * @param mode     按照值的总和还是次数统计
+	 * @param ranks    第1名到第K名对应的Metric名称
+	 */
+	public TopK(int capacity, Mode mode, MetricName... ranks) {
+		super(0.0);
+		if (ranks.length < 1) {
+			throw new IllegalArgumentException("Must track at least 1 rank.");
+		}
+		if (capacity < ranks.length) {
+			throw new IllegalArgumentException("Capacity must be at least the number of ranks.");
+		}
+		this.capacity = capacity;
+		this.mode = mode;
+		this.ranks = ranks;
+	}
+
+	@Override
+	public List<NamedMeasurable> stats() {
+		List<NamedMeasurable> ms = new ArrayList<NamedMeasurable>(this.ranks.length);
+		for (int i = 0; i < this.ranks.length; i++) {
+			final int rank = i;
+			ms.add(new NamedMeasurable(this.ranks[i], new Measurable() {
+				@Override
+				public double measure(MetricConfig config, long now) {
+					List<Entry> top = top(config, now);
+					return rank < top.size() ? top.get(rank).value() : Double.NaN;
+				}
+			}));
+		}
+
+		return ms;
+	}
+
+	@Override
+	public void record(MetricConfig config, double value, long timeMs) {
+		// 没有键，无法统计
+	}
+
+	@Override
+	public void record(MetricConfig config, String key, double value, long timeMs) {
+		Sample sample = window(config, timeMs);
+		// 采样时按照采样率放大，与其他累加类信号一致
+		double weight = (mode == Mode.COUNT ? 1.0 : value) * config.samplingRate();
+		((SpaceSavingSample) sample).offer(key, weight);
+		sample.eventCount += 1;
+	}
+
+	/**
+	 * 查询所有窗口合并后的前K个键，按照值从大到小排列
+	 *
+	 * 会清理过期窗口并遍历样本，不加锁，调用方需持有传感器的锁，一般通过 {@link Sensor#top(TopK)} 查询
+	 *
+	 * @param config  配置
+	 * @param now     当前时间
+	 * @return 最多K个条目
+	 */
+	public List<Entry> top(MetricConfig config, long now) {
+		purgeObsoleteSamples(config, now);
+		Map<String, Entry> merged = new HashMap<>();
+		for (int s = 0; s < this.samples.size(); s++) {
+			SpaceSavingSample sample = (SpaceSavingSample) this.samples.get(s);
+			for (int i = 0; i < sample.size; i++) {
+				Entry entry = merged.get(sample.keys[i]);
+				if (entry == null) {
+					merged.put(sample.keys[i], new Entry(sample.keys[i], sample.counts[i],
+							sample.errors[i]));
+				} else {
+					entry.value += sample.counts[i];
+					entry.error += sample.errors[i];
+				}
+			}
+		}
+		List<Entry> entries = new ArrayList<>(merged.values());
+		Collections.sort(entries, new Comparator<Entry>() {
+			@Override
+			public int compare(Entry e1, Entry e2) {
+				return Double.compare(e2.value, e1.value);
+			}
+		});
+
+		return entries.size() > ranks.length ? entries.subList(0, ranks.length) : entries;
+	}
+
+	@Override
+	public double combine(List<Sample> samples, MetricConfig config, long now) {
+		List<Entry> top = top(config, now);
+		return top.isEmpty() ? Double.NaN : top.get(0).value();
+	}
+
+	@Override
+	protected SpaceSavingSample newSample(long timeMs) {
+		return new SpaceSavingSample(this.capacity, timeMs);
+	}
+
+	@Override
+	protected void update(Sample sample, MetricConfig config, double value, long timeMs) {
+		// 只接受带键的记录
+	}
+
+	public static enum Mode {
+		// 按照值的总和统计
+		SUM,
+		// 按照记录次数统计
+		COUNT
+	}
+
+	/**
+	 * 前K名的条目
+	 *
+	 * @author wanggang
+	 *
+	 */
+	public static class Entry {
+
+		private final String key;
+		private double value;
+		// 可能高估的上限
+		private double error;
+
+		Entry(String key, double value, double error) {
+			this.key = key;
+			this.value = value;
+			this.error = error;
+		}
+
+		public String key() {
+			return key;
+		}
+
+		public double value() {
+			return value;
+		}
+
+		public double error() {
+			return error;
+		}
+
+		@Override
+		public String toString() {
+			return key + "=" + value + "(±" + error + ")";
+		}
+
+	}
+
+	/**
+	 * Space-Saving样本，计数器按照最小堆组织，替换最小计数器的复杂度为O(log capacity)
+	 *
+	 * @author wanggang
+	 *
+	 */
+	private static class SpaceSavingSample extends SampledStat.Sample {
+
+		private final String[] keys;
+		private final double[] counts;
+		private final double[] errors;
+		// 键在堆中的下标
+		private final Map<String, Integer> index;
+		private int size;
+
+		private SpaceSavingSample(int capacity, long now) {
+			super(0.0, now);
+			this.keys = new String[capacity];
+			this.counts = new double[capacity];
+			this.errors = new double[capacity];
+			this.index = new HashMap<>(capacity * 2);
+			this.size = 0;
+		}
+
+		/**
+		 * 估计样本占用的字节数，包括三个数组、下标索引以及跟踪中的键
+		 */
+		@Override
+		public long estimatedBytes() {
+			long bytes = super.estimatedBytes() + 4 * SizeEstimable.REFERENCE + 8
+					+ 3 * SizeEstimable.ARRAY_HEADER + keys.length * (SizeEstimable.REFERENCE + 16);
+			// HashMap的表、节点以及装箱的下标
+			bytes += SizeEstimable.OBJECT_HEADER + 32 + SizeEstimable.ARRAY_HEADER + keys.length
+					* 2 * SizeEstimable.REFERENCE;
+			for (int i = 0; i < size; i++) {
+				bytes += 32 + 16 + SizeEstimable.OBJECT_HEADER + 8 + SizeEstimable.ARRAY_HEADER
+						+ keys[i].length();
+			}
+			return bytes;
+		}
+
+		/**
+		 * 增加一个键的计数
+		 *
+		 * @param key     键
+		 * @param weight  增量
+		 */
+		private void offer(String key, double weight) {
+			Integer i = index.get(key);
+			if (i != null) {
+				counts[i] += weight;
+				// 按照总和统计时负值会减小计数
+				if (weight < 0) {
+					siftUp(i);
+				} else {
+					siftDown(i);
+				}
+			} else if (size < keys.length) {
+				keys[size] = key;
+				counts[size] = weight;
+				errors[size] = 0.0;
+				index.put(key, size);
+				siftUp(size++);
+			} else {
+				// 替换最小的计数器
+				double min = counts[0];
+				index.remove(keys[0]);
+				keys[0] = key;
+				counts[0] = min + weight;
+				errors[0] = min;
+				index.put(key, 0);
+				siftDown(0);
+			}
+		}
+
+		private void siftUp(int i) {
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				if (counts[parent] <= counts[i]) {
+					break;
+				}
+				swap(i, parent);
+				i = parent;
+			}
+		}
+
+		private void siftDown(int i) {
+			while (true) {
+				int left = 2 * i + 1;
+				if (left >= size) {
+					break;
+				}
+				int smallest = left + 1 < size && counts[left + 1] < counts[left] ? left + 1 : left;
+				if (counts[i] <= counts[smallest]) {
+					break;
+				}
+				swap(i, smallest);
+				i = smallest;
+			}
+		}
+
+		private void swap(int i, int j) {
+			String key = keys[i];
+			keys[i] = keys[j];
+			keys[j] = key;
+			double count = counts[i];
+			counts[i] = counts[j];
+			counts[j] = count;
+			double error = errors[i];
+			errors[i] = errors[j];
+			errors[j] = error;
+			index.put(keys[i], i);
+			index.put(keys[j], j);
+		}
+
+		@Override
+		public void reset(long now) {
+			super.reset(now);
+			for (int i = 0; i < size; i++) {
+				keys[i] = null;
+			}
+			index.clear();
+			size = 0;
+		}
+
+	}
+
+}
@@ -1,7 +1,9 @@
 package io.confluent.common.metrics.stats;
 
+import io.confluent.common.metrics.LongStat;
 import io.confluent.common.metrics.MeasurableStat;
 import io.confluent.common.metrics.MetricConfig;
+import io.confluent.common.metrics.OptimisticMeasurable;
 
 /**
  * 全量统计信号
@@ -9,9 +11,11 @@ import io.confluent.common.metrics.MetricConfig;
  * @author wanggang
  *
  */
-public class Total implements MeasurableStat {
+public class Total implements MeasurableStat, LongStat, OptimisticMeasurable {
 
 	private double total;
+	// 整数记录的精确总和
+	private long longTotal;
 
 	public Total() {
 		this.total = 0.0;
@@ -26,9 +30,24 @@ public class Total implements MeasurableStat {
 		this.total += value;
 	}
 
+	@Override
+	public void record(MetricConfig config, long value, long now) {
+		this.longTotal += value;
+	}
+
 	@Override
 	public double measure(MetricConfig config, long now) {
-		return this.total;
+		return this.total + this.longTotal;
+	}
+
+	@Override
+	public boolean peekable(MetricConfig config, long now) {
+		return true;
+	}
+
+	@Override
+	public double peek(MetricConfig config, long now) {
+		return measure(config, now);
 	}
 
 }
@@ -0,0 +1,158 @@
+package io.confluent.common.metrics.stats;
+
+import io.confluent.common.metrics.CompoundStat;
+import io.confluent.common.metrics.Measurable;
+import io.confluent.common.metrics.MetricConfig;
+import io.confluent.common.metrics.MetricName;
+import io.confluent.common.metrics.SizeEstimable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 组合信号，一次记录同时得到平均值、方差和标准差
+ *
+ * 每个窗口使用Welford算法保存事件数、平均值和离差平方和（M2），计算时用并行Welford公式合并所有窗口，
+ * 数值上比分别累加总和与平方和再相减要稳定。方差为总体方差，即 M2 / n。
+ *
+ * @author wanggang
+ *
+ */
+public class Variance extends SampledStat implements CompoundStat {
+
+	private final MetricName meanName;
+	private final MetricName varianceName;
+	private final MetricName stddevName;
+
+	// 合并后的事件数、平均值和离差平方和
+	private long mergedCount;
+	private double mergedMean;
+	private double mergedM2;
+
+	/**
+	 * @param mean      平均值的Metric名称
+	 * @param variance  方差的Metric名称
+	 * @param stddev    标准差的Metric名称
+	 */
+	public Variance(MetricName mean, MetricName variance, MetricName stddev) {
+		super(0.0);
+		this.meanName = mean;
+		this.varianceName = variance;
+		this.stddevName = stddev;
+	}
+
+	@Override
+	public List<NamedMeasurable> stats() {
+		List<NamedMeasurable> ms = new ArrayList<NamedMeasurable>(3);
+		ms.add(new NamedMeasurable(meanName, new Measurable() {
+			@Override
+			public double measure(MetricConfig config, long now) {
+				merge(config, now);
+				return mergedCount == 0 ? Double.NaN : mergedMean;
+			}
+		}));
+		ms.add(new NamedMeasurable(varianceName, new Measurable() {
+			@Override
+			public double measure(MetricConfig config, long now) {
+				return Variance.this.measure(config, now);
+			}
+		}));
+		ms.add(new NamedMeasurable(stddevName, new Measurable() {
+			@Override
+			public double measure(MetricConfig config, long now) {
+				return Math.sqrt(Variance.this.measure(config, now));
+			}
+		}));
+
+		return ms;
+	}
+
+	@Override
+	protected void update(Sample sample, MetricConfig config, double value, long timeMs) {
+		WelfordSample welford = (WelfordSample) sample;
+		long n = sample.eventCount + 1;
+		double delta = value - welford.mean;
+		welford.mean += delta / n;
+		welford.m2 += delta * (value - welford.mean);
+	}
+
+	@Override
+	public double combine(List<Sample> samples, MetricConfig config, long now) {
+		combine(samples);
+		return mergedCount == 0 ? Double.NaN : mergedM2 / mergedCount;
+	}
+
+	/**
+	 * 清理过时样本并合并所有窗口
+	 *
+	 * @param config  配置
+	 * @param now     当前时间
+	 */
+	private void merge(MetricConfig config, long now) {
+		purgeObsoleteSamples(config, now);
+		combine(this.samples);
+	}
+
+	/**
+	 * 并行Welford公式合并窗口
+	 *
+	 * @param samples 样本集合
+	 */
+	private void combine(List<Sample> samples) {
+		long count = 0;
+		double mean = 0.0;
+		double m2 = 0.0;
+		for (int i = 0; i < samples.size(); i++) {
+			WelfordSample sample = (WelfordSample) samples.get(i);
+			long n = sample.eventCount;
+			if (n == 0) {
+				continue;
+			}
+			long total = count + n;
+			double delta = sample.mean - mean;
+			mean += delta * n / total;
+			m2 += sample.m2 + delta * delta * ((double) count * n / total);
+			count = total;
+		}
+		this.mergedCount = count;
+		this.mergedMean = mean;
+		this.mergedM2 = m2;
+	}
+
+	@Override
+	protected WelfordSample newSample(long timeMs) {
+		return new WelfordSample(timeMs);
+	}
+
+	/**
+	 * Welford样本，保存平均值和离差平方和，事件数使用样本的eventCount
+	 *
+	 * @author wanggang
+	 *
+	 */
+	private static class WelfordSample extends SampledStat.Sample {
+
+		private double mean;
+		private double m2;
+
+		private WelfordSample(long now) {
+			super(0.0, now);
+			this.mean = 0.0;
+			this.m2 = 0.0;
+		}
+
+		@Override
+		public long estimatedBytes() {
+			return super.estimatedBytes() + 16;
+		}
+
+		@Override
+		public void reset(long now) {
+			super.reset(now);
+			this.mean = 0.0;
+			this.m2 = 0.0;
+		}
+
+	}
+
+}
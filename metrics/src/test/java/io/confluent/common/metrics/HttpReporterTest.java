@@ -0,0 +1,128 @@
+package io.confluent.common.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import io.confluent.common.metrics.stats.Total;
+import io.confluent.common.utils.MockTime;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class HttpReporterTest {
+
+	@Test
+	public void testHttpReporter_测试JSON输出过滤与条件请求() throws Exception {
+		MockTime time = new MockTime();
+		Metrics metrics = new Metrics(time);
+		HttpReporter reporter = new HttpReporter(metrics, new InetSocketAddress("127.0.0.1", 0),
+				"/metrics", 10, TimeUnit.SECONDS);
+		metrics.addReporter(reporter);
+		try {
+			Sensor sensor = metrics.sensor("test.http");
+			sensor.add(new MetricName("requests.total", "producer-metrics", "say \"hi\"",
+					"client-id", "c1"), new Total());
+			sensor.add(new MetricName("bytes.total", "consumer-metrics", ""), new Total());
+			sensor.record(3.0);
+			sensor.record(0.5);
+			String base = "http://127.0.0.1:" + reporter.address().getPort() + "/metrics";
+
+			HttpURLConnection conn = open(base + "?group=producer-metrics&tag=client-id%3Ac1", null);
+			assertEquals(200, conn.getResponseCode());
+			assertEquals("{\"metrics\":[{\"name\":\"requests.total\",\"group\":\"producer-metrics\","
+					+ "\"description\":\"say \\\"hi\\\"\",\"tags\":{\"client-id\":\"c1\"},"
+					+ "\"value\":3.5}]}", body(conn));
+			String etag = conn.getHeaderField("ETag");
+
+			// 没有变化时返回304
+			assertEquals(304, open(base + "?group=producer-metrics&tag=client-id%3Ac1", etag)
+					.getResponseCode());
+			// 记录后ETag变化
+			sensor.record(1.0);
+			conn = open(base + "?group=producer-metrics&tag=client-id%3Ac1", etag);
+			assertEquals(200, conn.getResponseCode());
+			assertTrue(body(conn).contains("\"value\":4.5"));
+			etag = conn.getHeaderField("ETag");
+			// 超过有效时间段后ETag变化
+			time.sleep(10 * 1000);
+			assertEquals(200, open(base + "?group=producer-metrics&tag=client-id%3Ac1", etag)
+					.getResponseCode());
+
+			// 不带过滤条件时返回所有Metric，输出超过缓冲区时分块发送
+			for (int i = 0; i < 500; i++) {
+				metrics.sensor("test.http" + i).add(new MetricName("m" + i, "bulk"), new Total());
+			}
+			conn = open(base, null);
+			String all = body(conn);
+			assertTrue(all.length() > 8192);
+			assertTrue(all.startsWith("{\"metrics\":[") && all.endsWith("]}"));
+			assertEquals(metrics.metrics().size(), all.split("\"value\":").length - 1);
+
+			assertEquals(400, open(base + "?tag=client-id", null).getResponseCode());
+			assertEquals(404, open(base + "/other", null).getResponseCode());
+		} finally {
+			metrics.close();
+		}
+	}
+
+	@Test
+	public void testNumberFormat_测试非整数直接输出() throws Exception {
+		Metrics metrics = new Metrics(new MockTime());
+		HttpReporter reporter = new HttpReporter(metrics, new InetSocketAddress("127.0.0.1", 0));
+		metrics.addReporter(reporter);
+		try {
+			final double[] values = {0.5, -3.25, 1.0 / 3, 123456.789, 0.001, 1.5e-7, 2.0e20,
+					-6.02214076e23, 1e15, 99999.99999999999, Double.MIN_VALUE, Double.MAX_VALUE};
+			for (int i = 0; i < values.length; i++) {
+				final double value = values[i];
+				metrics.addMetric(new MetricName("n" + i, "numbers"), new Measurable() {
+					@Override
+					public double measure(MetricConfig config, long now) {
+						return value;
+					}
+				});
+			}
+			String all = body(open("http://127.0.0.1:" + reporter.address().getPort()
+					+ "/metrics?group=numbers", null));
+			assertTrue(all.contains("\"value\":0.5}"));
+			assertTrue(all.contains("\"value\":-3.25}"));
+			assertTrue(all.contains("\"value\":0.001}"));
+			assertTrue(all.contains("\"value\":1.5E-7}"));
+			for (int i = 0; i < values.length; i++) {
+				String prefix = "\"name\":\"n" + i + "\"";
+				int start = all.indexOf("\"value\":", all.indexOf(prefix)) + 8;
+				double parsed = Double.parseDouble(all.substring(start, all.indexOf('}', start)));
+				// 15位有效数字
+				assertEquals(values[i], parsed, Math.abs(values[i]) * 1e-14);
+			}
+		} finally {
+			metrics.close();
+		}
+	}
+
+	private static HttpURLConnection open(String url, String etag) throws Exception {
+		HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+		if (etag != null) {
+			conn.setRequestProperty("If-None-Match", etag);
+		}
+		return conn;
+	}
+
+	private static String body(HttpURLConnection conn) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (InputStream in = conn.getInputStream()) {
+			byte[] buf = new byte[4096];
+			int n;
+			while ((n = in.read(buf)) > 0) {
+				bytes.write(buf, 0, n);
+			}
+		}
+		return new String(bytes.toByteArray(), "UTF-8");
+	}
+
+}
@@ -2,6 +2,13 @@ package io.confluent.common.metrics;
 
 import io.confluent.common.metrics.stats.Avg;
 import io.confluent.common.metrics.stats.Total;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.junit.Test;
 
@@ -20,4 +27,21 @@ public class JmxReporterTest {
 		metrics.close();
 	}
 
+	@Test
+	public void testJmxUnregistration_删除Metric后注销MBean() throws Exception {
+		Metrics metrics = new Metrics();
+		metrics.addReporter(new JmxReporter());
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		Sensor sensor = metrics.sensor("kafka.requests");
+		sensor.add(new MetricName("pack.bean1.avg", "grp1", "", "client-id", "c1"), new Avg());
+		sensor.add(new MetricName("pack.bean1.total", "grp1", "", "client-id", "c1"), new Total());
+		ObjectName name = new ObjectName(":type=grp1,client-id=c1");
+		assertTrue(server.isRegistered(name));
+		metrics.removeMetric(new MetricName("pack.bean1.avg", "grp1", "", "client-id", "c1"));
+		assertTrue(server.isRegistered(name));
+		metrics.removeMetric(new MetricName("pack.bean1.total", "grp1", "", "client-id", "c1"));
+		assertFalse(server.isRegistered(name));
+		metrics.close();
+	}
+
 }
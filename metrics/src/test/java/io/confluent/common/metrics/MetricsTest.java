@@ -2,20 +2,34 @@ package io.confluent.common.metrics;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
+import io.confluent.common.metrics.exceptions.MetricsException;
 import io.confluent.common.metrics.stats.Avg;
 import io.confluent.common.metrics.stats.Count;
+import io.confluent.common.metrics.stats.Frequencies;
+import io.confluent.common.metrics.stats.Frequency;
 import io.confluent.common.metrics.stats.Gauge;
+import io.confluent.common.metrics.stats.HistogramArena;
 import io.confluent.common.metrics.stats.Max;
 import io.confluent.common.metrics.stats.Min;
 import io.confluent.common.metrics.stats.Percentile;
 import io.confluent.common.metrics.stats.Percentiles;
+import io.confluent.common.metrics.stats.Percentiles.BucketSizing;
 import io.confluent.common.metrics.stats.Rate;
+import io.confluent.common.metrics.stats.SlidingExtremum;
+import io.confluent.common.metrics.stats.SlidingMax;
+import io.confluent.common.metrics.stats.SlidingMin;
+import io.confluent.common.metrics.stats.TopK;
 import io.confluent.common.metrics.stats.Total;
+import io.confluent.common.metrics.stats.Variance;
 import io.confluent.common.utils.MockTime;
 
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
@@ -210,6 +224,28 @@ public class MetricsTest {
 		assertEquals(3.0, count.measure(config, time.milliseconds()), EPS);
 	}
 
+	@Test
+	public void testAlignedTimeWindowing_测试对齐的时间窗口() {
+		Count aligned = new Count();
+		Count unaligned = new Count();
+		MetricConfig alignedConfig = new MetricConfig().timeWindow(100, TimeUnit.MILLISECONDS)
+				.samples(2).alignWindows(true);
+		MetricConfig unalignedConfig = new MetricConfig().timeWindow(100, TimeUnit.MILLISECONDS)
+				.samples(2);
+		// 移动到窗口内第90毫秒处
+		time.sleep((190 - time.milliseconds() % 100) % 100);
+		aligned.record(alignedConfig, 1.0, time.milliseconds());
+		unaligned.record(unalignedConfig, 1.0, time.milliseconds());
+		// 对齐时进入下一个窗口
+		time.sleep(20);
+		aligned.record(alignedConfig, 1.0, time.milliseconds());
+		unaligned.record(unalignedConfig, 1.0, time.milliseconds());
+		time.sleep(100);
+		// 对齐时第一个窗口从90毫秒前开始，已经过期
+		assertEquals(1.0, aligned.measure(alignedConfig, time.milliseconds()), EPS);
+		assertEquals(2.0, unaligned.measure(unalignedConfig, time.milliseconds()), EPS);
+	}
+
 	@Test
 	public void testOldDataHasNoEffect_测试旧数据没有产生影响() {
 		Max max = new Max();
@@ -223,6 +259,38 @@ public class MetricsTest {
 		assertEquals(Double.NEGATIVE_INFINITY, max.measure(config, time.milliseconds()), EPS);
 	}
 
+	@Test
+	public void testSlidingExtremum_测试滑动窗口极值() {
+		SlidingMax max = new SlidingMax();
+		SlidingMin min = new SlidingMin();
+		MetricConfig config = new MetricConfig().timeWindow(100, TimeUnit.MILLISECONDS).samples(2);
+		long bytes = max.estimatedBytes();
+		for (int i = 0; i < 45; i++) {
+			// 先一个峰值，然后是逐渐下降的值，间隔大于子窗口
+			double value = i == 0 ? 1000.0 : 200.0 - i;
+			max.record(config, value, time.milliseconds());
+			min.record(config, value, time.milliseconds());
+			time.sleep(4);
+		}
+		assertEquals(1000.0, max.measure(config, time.milliseconds()), EPS);
+		assertEquals(156.0, min.measure(config, time.milliseconds()), EPS);
+		// 峰值超出200毫秒的窗口后立即消失，剩下窗口内的最大值
+		time.sleep(20);
+		assertEquals(199.0, max.measure(config, time.milliseconds()), EPS);
+		time.sleep(200);
+		assertEquals(Double.NEGATIVE_INFINITY, max.measure(config, time.milliseconds()), EPS);
+		assertEquals(Double.POSITIVE_INFINITY, min.measure(config, time.milliseconds()), EPS);
+		// 持续下降的值在同一个子窗口中合并，队列长度不超过子窗口个数
+		for (int i = 0; i < 10000; i++) {
+			max.record(config, -i, time.milliseconds() + i / 50);
+		}
+		assertEquals(true, max.estimatedBytes() <= bytes + 16 * 8 * SlidingExtremum.SUB_WINDOWS);
+		// 记录过期后数组收缩
+		time.sleep(1000);
+		assertEquals(Double.NEGATIVE_INFINITY, max.measure(config, time.milliseconds()), EPS);
+		assertEquals(bytes, max.estimatedBytes());
+	}
+
 	@Test(expected = IllegalArgumentException.class)
 	public void testDuplicateMetricName_测试重复的指标命名() {
 		metrics.sensor("test").add(new MetricName("test", "grp1"), new Avg());
@@ -296,6 +364,59 @@ public class MetricsTest {
 		assertEquals(0.0, p75.value(), 1.0);
 	}
 
+	@Test
+	public void testVariance_测试方差和标准差() {
+		MetricConfig config = new MetricConfig().eventWindow(4).samples(3);
+		Sensor sensor = metrics.sensor("test.latency", config);
+		sensor.add(new Variance(new MetricName("test.mean", "grp1"), new MetricName(
+				"test.variance", "grp1"), new MetricName("test.stddev", "grp1")));
+		// 记录1到10，分布在三个窗口中
+		for (int i = 1; i <= 10; i++) {
+			sensor.record(i);
+		}
+		assertEquals(5.5, metrics.metrics().get(new MetricName("test.mean", "grp1")).value(), EPS);
+		assertEquals(8.25, metrics.metrics().get(new MetricName("test.variance", "grp1")).value(),
+				EPS);
+		assertEquals(Math.sqrt(8.25), metrics.metrics().get(new MetricName("test.stddev", "grp1"))
+				.value(), EPS);
+
+		// 均值很大时仍然稳定
+		Variance variance = new Variance(null, null, null);
+		for (int i = 0; i < 1000; i++) {
+			variance.record(config, 1e9 + (i % 2), time.milliseconds());
+		}
+		assertEquals(0.25, variance.measure(config, time.milliseconds()), EPS);
+	}
+
+	@Test
+	public void testFrequencies_测试离散值频率() {
+		MetricConfig config = new MetricConfig().eventWindow(50).samples(2);
+		Sensor sensor = metrics.sensor("test.errors", config);
+		// 错误码0到4，每个桶对应一个错误码
+		sensor.add(new Frequencies(5, 0.0, 5.0, new Frequency(new MetricName("test.code0",
+				"grp1"), 0.0), new Frequency(new MetricName("test.code3", "grp1"), 3.0)));
+		for (int i = 0; i < 100; i++) {
+			sensor.record(i % 4 == 0 ? 3.0 : 0.0);
+		}
+		assertEquals(0.75, metrics.metrics().get(new MetricName("test.code0", "grp1")).value(),
+				EPS);
+		assertEquals(0.25, metrics.metrics().get(new MetricName("test.code3", "grp1")).value(),
+				EPS);
+		// 两个窗口都被新数据替换后，旧的计数不再生效
+		for (int i = 0; i < 100; i++) {
+			sensor.record(3.0);
+		}
+		assertEquals(0.0, metrics.metrics().get(new MetricName("test.code0", "grp1")).value(), EPS);
+		assertEquals(1.0, metrics.metrics().get(new MetricName("test.code3", "grp1")).value(), EPS);
+
+		Frequencies booleans = Frequencies.forBooleanValues(new MetricName("test.false", "grp1"),
+				new MetricName("test.true", "grp1"));
+		booleans.record(config, 1.0, time.milliseconds());
+		booleans.record(config, 0.0, time.milliseconds());
+		booleans.record(config, 1.0, time.milliseconds());
+		assertEquals(2.0 / 3.0, booleans.frequency(config, time.milliseconds(), 1.0), EPS);
+	}
+
 	@Test
 	public void testGauge_测试最新的记录值() {
 		ConstantMeasurable measurable = new ConstantMeasurable();
@@ -312,6 +433,649 @@ public class MetricsTest {
 				metrics.metrics().get(new MetricName("test.gauge", "grp1")).value(), EPS);
 	}
 
+	@Test
+	public void testCardinalityReject_测试超过基数上限丢弃() {
+		metrics.cardinalityLimit(0, 2, Metrics.CardinalityPolicy.REJECT);
+		for (int i = 0; i < 5; i++) {
+			Sensor sensor = metrics.sensor("test.request" + i);
+			sensor.add(new MetricName("request.total", "grp1", "", "request-id", "r" + i),
+					new Total());
+			sensor.record(1.0);
+		}
+		// 每个组最多两个Metric，其余的被丢弃
+		assertEquals(2, metrics.metrics().size() - internalMetrics());
+		assertEquals(3, metrics.droppedMetrics());
+		assertEquals(3.0, metrics.metrics()
+				.get(new MetricName("metrics-dropped-total", Metrics.INTERNAL_GROUP)).value(), EPS);
+		// 其他组不受影响
+		metrics.sensor("test.other").add(new MetricName("other.total", "grp2"), new Total());
+		assertEquals(3, metrics.metrics().size() - internalMetrics());
+	}
+
+	@Test
+	public void testCardinalityFold_测试超过基数上限折叠() {
+		metrics.cardinalityLimit(1, 0, Metrics.CardinalityPolicy.FOLD);
+		for (int i = 0; i < 4; i++) {
+			Sensor sensor = metrics.sensor("test.request" + i);
+			sensor.add(new MetricName("request.total", "grp1", "", "request-id", "r" + i),
+					new Total());
+			sensor.record(1.0);
+		}
+		// 第一个正常注册，其余三个折叠到保留的标签值中
+		MetricName folded = new MetricName("request.total", "grp1", "", "request-id",
+				Metrics.OTHER_TAG_VALUE);
+		assertEquals(1.0, metrics.metrics()
+				.get(new MetricName("request.total", "grp1", "", "request-id", "r0")).value(), EPS);
+		assertEquals(3.0, metrics.metrics().get(folded).value(), EPS);
+		assertEquals(3, metrics.foldedMetrics());
+		assertEquals(0, metrics.droppedMetrics());
+		// 没有Metric的Sensor不保留在仓库中，调用方的引用仍然汇总到折叠Metric
+		assertEquals(null, metrics.getSensor("test.request1"));
+		Sensor detached = metrics.sensor("test.request1");
+		detached.add(new MetricName("request.total", "grp1", "", "request-id", "r1"), new Total());
+		detached.record(1.0);
+		// 与折叠Metric同名时合并，不抛出异常
+		Sensor same = metrics.sensor("test.request.other");
+		same.add(folded, new Total());
+		same.record(1.0);
+		assertEquals(5.0, metrics.metrics().get(folded).value(), EPS);
+		assertEquals(5, metrics.foldedMetrics());
+
+		// 折叠后的名称已经被普通Metric使用时丢弃
+		Metrics registry = new Metrics(time);
+		registry.cardinalityLimit(1, 0, Metrics.CardinalityPolicy.FOLD);
+		registry.sensor("test.conflict0").add(new MetricName("conflict.total", "grp1", "",
+				"request-id", Metrics.OTHER_TAG_VALUE), new Total());
+		registry.sensor("test.conflict1").add(new MetricName("conflict.total", "grp1", "",
+				"request-id", "r1"), new Total());
+		assertEquals(0, registry.foldedMetrics());
+		assertEquals(1, registry.droppedMetrics());
+		assertEquals(null, registry.getSensor("test.conflict1"));
+	}
+
+	@Test
+	public void testAsyncRecording_测试异步记录() throws Exception {
+		Sensor parent = metrics.sensor("test.parent");
+		parent.add(new MetricName("parent.count", "grp1"), new Count());
+		final Sensor sensor = metrics.sensor("test.async",
+				new MetricConfig().asyncRecording(64, MetricConfig.OverflowPolicy.SYNC), parent);
+		sensor.add(new MetricName("async.total", "grp1"), new Total());
+		sensor.add(new MetricName("async.max", "grp1"), new Max());
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 1; i <= 10000; i++) {
+						sensor.record(i);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		sensor.flush();
+		// 缓冲区满时退化为同步记录，不会丢失
+		assertEquals(4 * 10000 * 10001 / 2.0,
+				metrics.metrics().get(new MetricName("async.total", "grp1")).value(), EPS);
+		assertEquals(10000.0, metrics.metrics().get(new MetricName("async.max", "grp1")).value(),
+				EPS);
+		assertEquals(40000.0, metrics.metrics().get(new MetricName("parent.count", "grp1")).value(),
+				EPS);
+		assertEquals(0, sensor.droppedRecords());
+		metrics.close();
+	}
+
+	@Test
+	public void testAsyncStatFailure_测试异步信号异常不影响其他Sensor() throws Exception {
+		MetricConfig async = new MetricConfig().asyncRecording(64, MetricConfig.OverflowPolicy.DROP);
+		Sensor failing = metrics.sensor("test.async.failing", async);
+		failing.add(new MetricName("async.failing", "grp1"), new MeasurableStat() {
+			@Override
+			public void record(MetricConfig config, double value, long timeMs) {
+				throw new IllegalArgumentException("Bad value " + value);
+			}
+
+			@Override
+			public double measure(MetricConfig config, long now) {
+				return 0.0;
+			}
+		});
+		Sensor healthy = metrics.sensor("test.async.healthy", async);
+		healthy.add(new MetricName("async.healthy", "grp1"), new Total());
+		MetricName total = new MetricName("async.healthy", "grp1");
+		for (int round = 1; round <= 2; round++) {
+			failing.record(1.0);
+			healthy.record(1.0);
+			// 聚合线程仍然存活，继续排空其他Sensor
+			long deadline = System.currentTimeMillis() + 5000;
+			while (metrics.metrics().get(total).value() < round
+					&& System.currentTimeMillis() < deadline) {
+				Thread.sleep(1);
+			}
+			assertEquals(round, metrics.metrics().get(total).value(), EPS);
+		}
+		metrics.close();
+	}
+
+	@Test
+	public void testLongRecording_测试整数记录() {
+		Sensor longs = metrics.sensor("test.longs");
+		Sensor doubles = metrics.sensor("test.doubles");
+		for (Sensor sensor : Arrays.asList(longs, doubles)) {
+			String prefix = sensor.name() + ".";
+			sensor.add(new MetricName(prefix + "total", "grp1"), new Total());
+			sensor.add(new MetricName(prefix + "count", "grp1"), new Count());
+			sensor.add(new MetricName(prefix + "rate", "grp1"), new Rate(TimeUnit.SECONDS));
+			sensor.add(new MetricName(prefix + "max", "grp1"), new Max());
+			sensor.add(new Percentiles(400, 0, 1000, Percentiles.BucketSizing.CONSTANT,
+					new Percentile(new MetricName(prefix + "p90", "grp1"), 90.0)));
+		}
+		for (long i = 0; i < 1000; i++) {
+			longs.record(i);
+			doubles.record((double) i);
+		}
+		time.sleep(1000);
+		for (String stat : Arrays.asList("total", "count", "rate", "max", "p90")) {
+			assertEquals(stat, metrics.metrics().get(new MetricName("test.doubles." + stat, "grp1"))
+					.value(), metrics.metrics().get(new MetricName("test.longs." + stat, "grp1"))
+					.value(), EPS);
+		}
+		assertEquals(499500.0, metrics.metrics().get(new MetricName("test.longs.total", "grp1"))
+				.value(), EPS);
+	}
+
+	@Test
+	public void testTimer_测试计时() {
+		Sensor sensor = metrics.sensor("test.timer",
+				new MetricConfig().timeUnit(TimeUnit.MILLISECONDS));
+		sensor.add(new MetricName("timer.max", "grp1"), new Max());
+		sensor.add(new MetricName("timer.count", "grp1"), new Count());
+		long start = sensor.start();
+		time.sleep(5);
+		sensor.stop(start);
+		assertEquals(5.0, metrics.metrics().get(new MetricName("timer.max", "grp1")).value(), EPS);
+
+		try (Sensor.Timer timer = sensor.time()) {
+			// 嵌套计时使用新的计时器
+			try (Sensor.Timer nested = sensor.time()) {
+				assertEquals(false, nested == timer);
+				time.sleep(7);
+			}
+			time.sleep(1);
+		}
+		assertEquals(8.0, metrics.metrics().get(new MetricName("timer.max", "grp1")).value(), EPS);
+		assertEquals(3.0, metrics.metrics().get(new MetricName("timer.count", "grp1")).value(), EPS);
+		// 重复关闭不影响之后获取的计时器
+		Sensor.Timer closed = sensor.time();
+		closed.close();
+		Sensor.Timer running = sensor.time();
+		time.sleep(20);
+		closed.close();
+		assertEquals(4.0, metrics.metrics().get(new MetricName("timer.count", "grp1")).value(), EPS);
+		running.close();
+		assertEquals(5.0, metrics.metrics().get(new MetricName("timer.count", "grp1")).value(), EPS);
+		assertEquals(20.0, metrics.metrics().get(new MetricName("timer.max", "grp1")).value(), EPS);
+	}
+
+	@Test
+	public void testRecordingLevel_测试记录级别() {
+		Sensor parent = metrics.sensor("test.level.parent");
+		parent.add(new MetricName("level.parent.count", "grp1"), new Count());
+		Sensor sensor = metrics.sensor("test.level",
+				new MetricConfig().recordLevel(Sensor.RecordingLevel.DEBUG), parent);
+		sensor.add(new MetricName("level.count", "grp1"), new Count());
+		assertEquals(Sensor.RecordingLevel.INFO, metrics.recordLevel());
+		sensor.record(1.0);
+		sensor.record(1L);
+		sensor.record("key", 1.0);
+		Sensor.Timer timer = sensor.time();
+		time.sleep(1);
+		timer.close();
+		assertEquals(Long.MIN_VALUE, sensor.start());
+		// 未开启的传感器不记录，也不传递给父传感器
+		assertEquals(0.0, metrics.metrics().get(new MetricName("level.count", "grp1")).value(), EPS);
+		assertEquals(0.0, metrics.metrics().get(new MetricName("level.parent.count", "grp1"))
+				.value(), EPS);
+		// 运行时调整级别后开始记录
+		metrics.recordLevel(Sensor.RecordingLevel.DEBUG);
+		sensor.record(1.0);
+		assertEquals(1.0, metrics.metrics().get(new MetricName("level.count", "grp1")).value(), EPS);
+		assertEquals(1.0, metrics.metrics().get(new MetricName("level.parent.count", "grp1"))
+				.value(), EPS);
+	}
+
+	@Test
+	public void testValueCache_测试指标值缓存() {
+		Sensor sensor = metrics.sensor("test.cached");
+		sensor.add(new MetricName("cached.total", "grp1"), new Total(),
+				new MetricConfig().valueCacheTtl(1, TimeUnit.SECONDS));
+		KafkaMetric metric = metrics.metrics().get(new MetricName("cached.total", "grp1"));
+		sensor.record(1.0);
+		assertEquals(1.0, metric.value(), EPS);
+		sensor.record(1.0);
+		// 缓存期间返回上次的结果
+		assertEquals(1.0, metric.value(), EPS);
+		time.sleep(1000);
+		assertEquals(2.0, metric.value(), EPS);
+		// 修改配置后缓存失效
+		sensor.record(1.0);
+		metric.config(new MetricConfig());
+		assertEquals(3.0, metric.value(), EPS);
+	}
+
+	@Test(timeout = 10000)
+	public void testOptimisticRead_测试读取不阻塞记录() throws Exception {
+		final Sensor sensor = metrics.sensor("test.optimistic");
+		sensor.add(new MetricName("optimistic.total", "grp1"), new Total());
+		sensor.add(new MetricName("optimistic.count", "grp1"), new Count());
+		sensor.add(new MetricName("optimistic.max", "grp1"), new Max());
+		sensor.record(1.0);
+		final KafkaMetric total = metrics.metrics().get(new MetricName("optimistic.total", "grp1"));
+		final KafkaMetric count = metrics.metrics().get(new MetricName("optimistic.count", "grp1"));
+		// 其他线程持有传感器的锁时读取仍然可以完成
+		final CountDownLatch locked = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		Thread holder = new Thread() {
+			@Override
+			public void run() {
+				synchronized (sensor) {
+					locked.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						// DO NOTHING
+					}
+				}
+			}
+		};
+		holder.start();
+		locked.await();
+		assertEquals(1.0, total.value(), EPS);
+		assertEquals(1.0, count.value(), EPS);
+		release.countDown();
+		holder.join();
+
+		// 并发记录时读到的值单调不减
+		Thread writer = new Thread() {
+			@Override
+			public void run() {
+				for (int i = 0; i < 100000; i++) {
+					sensor.record(1.0);
+				}
+			}
+		};
+		writer.start();
+		double last = 0.0;
+		while (writer.isAlive()) {
+			double value = total.value();
+			assertEquals(true, value >= last);
+			last = value;
+		}
+		writer.join();
+		assertEquals(100001.0, total.value(), EPS);
+		assertEquals(100001.0, count.value(), EPS);
+	}
+
+	@Test
+	public void testQuery_测试按照组和标签查询() {
+		for (int i = 0; i < 3; i++) {
+			Sensor sensor = metrics.sensor("test.client" + i);
+			sensor.add(new MetricName("client.total", "producer-metrics", "", "client-id", "c" + i,
+					"topic", "orders-" + i), new Total());
+			sensor.add(new MetricName("client.total", "consumer-metrics", "", "client-id", "c" + i),
+					new Total());
+		}
+		assertEquals(3, metrics.query(new MetricQuery().group("producer-metrics")).size());
+		assertEquals(6, metrics.query(new MetricQuery().groupPrefix("producer-").groupPrefix("")
+				.tagPrefix("client-id", "c")).size());
+		List<KafkaMetric> result = metrics.query(new MetricQuery().group("producer-metrics").tag(
+				"client-id", "c1"));
+		assertEquals(1, result.size());
+		assertEquals("orders-1", result.get(0).metricName().tags().get("topic"));
+		assertEquals(3, metrics.query(new MetricQuery().tagPrefix("topic", "orders-")).size());
+		assertEquals(0, metrics.query(new MetricQuery().tag("topic", "orders")).size());
+		assertEquals(0, metrics.query(new MetricQuery().tag("missing", "x")).size());
+		assertEquals(metrics.metrics().size(), metrics.query(new MetricQuery()).size());
+
+		// 删除后索引同步更新
+		MetricName removed = new MetricName("client.total", "consumer-metrics", "", "client-id",
+				"c1");
+		assertEquals(removed, metrics.removeMetric(removed).metricName());
+		assertEquals(null, metrics.removeMetric(removed));
+		assertEquals(null, metrics.metrics().get(removed));
+		assertEquals(1, metrics.query(new MetricQuery().tag("client-id", "c1")).size());
+		assertEquals(2, metrics.query(new MetricQuery().group("consumer-metrics")).size());
+	}
+
+	@Test
+	public void testSensorFamily_测试按键传感器族与LRU淘汰() {
+		Sensor parent = metrics.sensor("test.family.parent");
+		parent.add(new MetricName("family.total", "grp1"), new Total());
+		SensorFamily family = metrics.sensorFamily("test.family", "client-id", 2, null, parent);
+		assertEquals(family, metrics.sensorFamily("test.family", "client-id", 2, null));
+		family.add(new MetricNameTemplate("client.total", "client-metrics", "", "request", "produce"),
+				new SensorFamily.StatFactory() {
+					@Override
+					public MeasurableStat create() {
+						return new Total();
+					}
+				});
+		family.record("a", 1.0);
+		family.record("b", 2.0);
+		family.record("a", 3.0);
+		// 容量为2，b最久没有记录，被淘汰
+		family.record("c", 4.0);
+		assertEquals(2, family.size());
+		assertEquals(1, family.evictions());
+		assertEquals(10.0, metrics.metrics().get(new MetricName("family.total", "grp1")).value(), EPS);
+		assertEquals(4.0, metrics.metrics().get(clientTotal("a")).value(), EPS);
+		assertEquals(4.0, metrics.metrics().get(clientTotal("c")).value(), EPS);
+		assertEquals(null, metrics.metrics().get(clientTotal("b")));
+		assertEquals(0, metrics.query(new MetricQuery().tag("client-id", "b")).size());
+		assertEquals(2, metrics.query(new MetricQuery().group("client-metrics")).size());
+
+		// 淘汰后重新创建的子Sensor从零开始
+		family.record("b", 5.0);
+		assertEquals(2, family.evictions());
+		assertEquals(null, metrics.metrics().get(clientTotal("a")));
+		assertEquals(5.0, metrics.metrics().get(clientTotal("b")).value(), EPS);
+		for (int i = 0; i < 1000; i++) {
+			// 频繁记录的键不会被淘汰
+			family.record("c", 1.0);
+			family.record("k" + i, 1.0);
+		}
+		assertEquals(2, family.size());
+		assertEquals(1004.0, metrics.metrics().get(clientTotal("c")).value(), EPS);
+		assertEquals(2, metrics.query(new MetricQuery().group("client-metrics")).size());
+	}
+
+	@Test
+	public void testSensorFamilyLookup_测试查找已有子Sensor不获取族的锁() throws Exception {
+		final SensorFamily family = metrics.sensorFamily("test.family.lookup", "client-id", 64,
+				null);
+		family.add(new MetricNameTemplate("client.total", "client-metrics", "", "request", "fetch"),
+				new SensorFamily.StatFactory() {
+					@Override
+					public MeasurableStat create() {
+						return new Total();
+					}
+				});
+		for (int i = 0; i < 64; i++) {
+			family.record("k" + i, 1.0);
+		}
+		// 其他线程持有族的锁时，已有键的记录仍然可以完成
+		final CountDownLatch locked = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		Thread holder = new Thread() {
+			@Override
+			public void run() {
+				synchronized (family) {
+					locked.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						// DO NOTHING
+					}
+				}
+			}
+		};
+		holder.start();
+		locked.await();
+		for (int i = 0; i < 64; i++) {
+			family.record("k" + i, 1.0);
+		}
+		release.countDown();
+		holder.join();
+		assertEquals(2.0, metrics.metrics().get(new MetricName("client.total", "client-metrics", "",
+				"request", "fetch", "client-id", "k63")).value(), EPS);
+		// 超过比较数量的族按照近似LRU淘汰，最近记录的键保留
+		for (int i = 0; i < 32; i++) {
+			family.record("k0", 1.0);
+			family.record("new" + i, 1.0);
+		}
+		assertEquals(64, family.size());
+		assertEquals(32, family.evictions());
+		assertEquals(34.0, metrics.metrics().get(new MetricName("client.total", "client-metrics",
+				"", "request", "fetch", "client-id", "k0")).value(), EPS);
+	}
+
+	@Test
+	public void testFamilyReleasesArena_测试淘汰的子Sensor归还堆外直方图() {
+		final HistogramArena arena = metrics.histogramArena();
+		SensorFamily family = metrics.sensorFamily("test.family.arena", "client-id", 2, null);
+		family.add(new MetricNameTemplate("client.median", "client-metrics", ""),
+				new SensorFamily.StatFactory() {
+					@Override
+					public MeasurableStat create() {
+						// 每个直方图4000字节，1000个键不复用时需要约4MB堆外内存
+						return new Percentiles(4000, 0.0, 100.0, BucketSizing.CONSTANT, arena,
+								new Percentile(new MetricName("client.p50", "client-metrics"), 50));
+					}
+				});
+		family.record("k0", 1.0);
+		long reserved = arena.reservedBytes();
+		for (int i = 1; i < 1000; i++) {
+			family.record("k" + i, 1.0);
+		}
+		assertEquals(998, family.evictions());
+		assertEquals(reserved, arena.reservedBytes());
+		assertEquals(2 * 4000, arena.allocatedBytes());
+		// 淘汰的子Sensor从增量维护的估计值中扣除
+		assertEquals(metrics.estimatedBytes(), metrics.accountedBytes(), 1000.0);
+	}
+
+	private static MetricName clientTotal(String clientId) {
+		return new MetricName("client.total", "client-metrics", "", "request", "produce", "client-id",
+				clientId);
+	}
+
+	@Test
+	public void testSampling_测试概率采样() {
+		Sensor sensor = metrics.sensor("test.sampled", new MetricConfig().samplingRate(10));
+		sensor.add(new MetricName("sampled.count", "grp1"), new Count());
+		sensor.add(new MetricName("sampled.total", "grp1"), new Total());
+		sensor.add(new MetricName("sampled.avg", "grp1"), new Avg());
+		sensor.add(new MetricName("sampled.max", "grp1"), new Max());
+		sensor.add(new MetricName("sampled.min", "grp1"), new Min());
+		for (int i = 0; i < 100000; i++) {
+			sensor.record(i % 100 + 1);
+		}
+		// 只出现一次的极值也能被记录
+		sensor.record(5000.0);
+		sensor.record(-5000.0);
+		// 计数和总和按照采样率放大，误差在5%以内
+		assertEquals(100000.0, metrics.metrics().get(new MetricName("sampled.count", "grp1"))
+				.value(), 5000.0);
+		assertEquals(5050000.0, metrics.metrics().get(new MetricName("sampled.total", "grp1"))
+				.value(), 252500.0);
+		assertEquals(50.5, metrics.metrics().get(new MetricName("sampled.avg", "grp1")).value(),
+				2.5);
+		assertEquals(5000.0, metrics.metrics().get(new MetricName("sampled.max", "grp1")).value(),
+				EPS);
+		assertEquals(-5000.0, metrics.metrics().get(new MetricName("sampled.min", "grp1")).value(),
+				EPS);
+	}
+
+	@Test
+	public void testKeyedSampling_测试带键记录的采样() {
+		Sensor sensor = metrics.sensor("test.sampled.keyed", new MetricConfig().samplingRate(10));
+		sensor.add(new MetricName("keyed.count", "grp1"), new Count());
+		sensor.add(new MetricName("keyed.total", "grp1"), new Total());
+		sensor.add(new MetricName("keyed.max", "grp1"), new Max());
+		sensor.add(new TopK(10, TopK.Mode.COUNT, new MetricName("keyed.top1", "grp1")));
+		for (int i = 0; i < 100000; i++) {
+			sensor.record("client" + i % 10, i % 100 + 1);
+		}
+		sensor.record("client0", 5000.0);
+		// 带键的记录同样按照采样率选取，放大后的计数和总和误差在5%以内，不会被放大N倍
+		assertEquals(100000.0, metrics.metrics().get(new MetricName("keyed.count", "grp1"))
+				.value(), 5000.0);
+		assertEquals(5050000.0, metrics.metrics().get(new MetricName("keyed.total", "grp1"))
+				.value(), 252500.0);
+		assertEquals(5000.0, metrics.metrics().get(new MetricName("keyed.max", "grp1")).value(),
+				EPS);
+		// TopK的次数同样放大，每个键约10000次
+		assertEquals(10000.0, metrics.metrics().get(new MetricName("keyed.top1", "grp1")).value(),
+				1500.0);
+	}
+
+	@Test
+	public void testSelfMetrics_测试自身指标() {
+		metrics.sensor("test.before").add(new MetricName("before.total", "grp1"), new Total());
+		metrics.enableSelfMetrics();
+		Sensor sensor = metrics.sensor("test.self");
+		sensor.add(new MetricName("self.max", "grp1"), new Max(),
+				new MetricConfig().quota(Quota.lessThan(Double.POSITIVE_INFINITY)));
+		sensor.add(new MetricName("self.total", "grp2"), new Total());
+		for (int i = 0; i < 10000; i++) {
+			sensor.record(i);
+		}
+		assertEquals(10000.0, internal("quota-evaluations-total").value(), EPS);
+		assertEquals(0.0, internal("sensor-lock-contention-total").value(), EPS);
+		assertEquals(2.0, metrics.metrics().get(new MetricName("metric-count",
+				Metrics.INTERNAL_GROUP, "", "group", "grp1")).value(), EPS);
+		assertEquals(1.0, metrics.metrics().get(new MetricName("metric-count",
+				Metrics.INTERNAL_GROUP, "", "group", "grp2")).value(), EPS);
+		// 记录耗时按照1/64采样，10000次记录几乎一定会被采样到
+		assertEquals(true, internal("record-time-max-ns").value() > 0.0);
+		assertEquals(true, internal("record-rate").value() > 0.0);
+		assertEquals(true, internal("reporter-time-max-ns").value() >= 0.0);
+	}
+
+	@Test
+	public void testMemoryBudget_测试内存估计与预算() {
+		Sensor small = metrics.sensor("test.small");
+		small.add(new MetricName("small.total", "grp1"), new Total());
+		Sensor large = metrics.sensor("test.large");
+		large.add(new Percentiles(4000, 1000.0, BucketSizing.LINEAR, new Percentile(
+				new MetricName("large.p50", "grp1"), 50)));
+		for (int i = 0; i < 100; i++) {
+			small.record(i);
+			large.record(i);
+			time.sleep(1000);
+		}
+		// 两个窗口的直方图各1000个桶
+		assertEquals(true, large.estimatedBytes() > 8000);
+		assertEquals(true, small.estimatedBytes() < 2000);
+		assertEquals(true, metrics.estimatedBytes() >= small.estimatedBytes()
+				+ large.estimatedBytes());
+		metrics.enableSelfMetrics();
+		assertEquals(metrics.estimatedBytes(), internal("estimated-memory-bytes").value(), 1000.0);
+
+		metrics.memoryBudget(metrics.estimatedBytes() + 2000);
+		metrics.sensor("test.allowed");
+		assertEquals(small, metrics.sensor("test.small"));
+		// 样本在第一次记录时创建
+		Sensor allowed = metrics.sensor("test.allowed");
+		allowed.add(new Percentiles(4000, 1000.0, BucketSizing.LINEAR, new Percentile(
+				new MetricName("allowed.p50", "grp1"), 50)));
+		allowed.record(1.0);
+		// 预算按照增量维护的估计值检查，与完整统计一致
+		assertEquals(metrics.estimatedBytes(), metrics.accountedBytes(), 1000.0);
+		try {
+			metrics.sensor("test.rejected");
+			fail("Should have exceeded the memory budget.");
+		} catch (MetricsException e) {
+			// 预期异常
+		}
+		assertEquals(null, metrics.getSensor("test.rejected"));
+		metrics.memoryBudget(0);
+		metrics.sensor("test.rejected");
+	}
+
+	@Test
+	public void testDeltaTracker_测试增量报告() {
+		Sensor parent = metrics.sensor("test.delta.parent");
+		parent.add(new MetricName("delta.parent", "grp1"), new Total());
+		Sensor busy = metrics.sensor("test.delta.busy", parent);
+		busy.add(new MetricName("delta.busy", "grp1"), new Total());
+		Sensor idle = metrics.sensor("test.delta.idle");
+		idle.add(new MetricName("delta.idle", "grp1"), new Count());
+		idle.record(1.0);
+		metrics.addMetric(new MetricName("delta.gauge", "grp1"), new Measurable() {
+			@Override
+			public double measure(MetricConfig config, long now) {
+				return 1.0;
+			}
+		});
+		DeltaTracker tracker = metrics.deltaTracker(60, TimeUnit.SECONDS);
+		assertEquals(metrics.metrics().size(), tracker.changed().size());
+		assertEquals(names("delta.gauge"), names(tracker.changed()));
+
+		busy.record(1.0);
+		time.sleep(1000);
+		assertEquals(names("delta.busy", "delta.gauge", "delta.parent"), names(tracker.changed()));
+		assertEquals(names("delta.gauge"), names(tracker.changed()));
+
+		// 新注册的Metric视为变化
+		idle.add(new MetricName("delta.idle.total", "grp1"), new Total());
+		assertEquals(names("delta.gauge", "delta.idle.total"), names(tracker.changed()));
+
+		time.sleep(60 * 1000);
+		assertEquals(metrics.metrics().size(), tracker.changed().size());
+		assertEquals(names("delta.gauge"), names(tracker.changed()));
+		tracker.forceFullRefresh();
+		assertEquals(metrics.metrics().size(), tracker.changed().size());
+
+		// 删除的Metric在下一次全量刷新时才清理
+		int tracked = tracker.tracked();
+		metrics.removeMetric(new MetricName("delta.idle.total", "grp1"));
+		assertEquals(names("delta.gauge"), names(tracker.changed()));
+		assertEquals(tracked, tracker.tracked());
+		time.sleep(60 * 1000);
+		tracker.changed();
+		assertEquals(tracked - 1, tracker.tracked());
+	}
+
+	private static Set<String> names(String... names) {
+		return new TreeSet<>(Arrays.asList(names));
+	}
+
+	private static Set<String> names(List<KafkaMetric> metrics) {
+		Set<String> names = new TreeSet<>();
+		for (KafkaMetric metric : metrics) {
+			names.add(metric.metricName().name());
+		}
+		return names;
+	}
+
+	private KafkaMetric internal(String name) {
+		return metrics.metrics().get(new MetricName(name, Metrics.INTERNAL_GROUP));
+	}
+
+	@Test
+	public void testRecordBuffer_测试异步记录缓冲区() {
+		// 容量向上取整为4
+		RecordBuffer buffer = new RecordBuffer(3);
+		for (int i = 0; i < 4; i++) {
+			assertEquals(true, buffer.offer(i, 100 + i));
+		}
+		assertEquals("缓冲区已满", false, buffer.offer(4, 104));
+		for (int i = 0; i < 4; i++) {
+			assertEquals(true, buffer.poll());
+			assertEquals(i, buffer.value(), EPS);
+			assertEquals(100 + i, buffer.timeMs());
+		}
+		assertEquals(false, buffer.poll());
+		// 读出后槽位可以重用
+		assertEquals(true, buffer.offer(5, 105));
+		assertEquals(true, buffer.poll());
+		assertEquals(5.0, buffer.value(), EPS);
+	}
+
+	private int internalMetrics() {
+		int count = 0;
+		for (MetricName name : metrics.metrics().keySet()) {
+			if (Metrics.INTERNAL_GROUP.equals(name.group())) {
+				count++;
+			}
+		}
+		return count;
+	}
+
 	/**
 	 * 常量计算器
 	 *
@@ -0,0 +1,156 @@
+package io.confluent.common.metrics.history;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class GorillaCodecTest {
+
+	@Test
+	public void testRoundTrip_测试编码解码一致() {
+		for (ByteOrder order : new ByteOrder[] { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN }) {
+			Random random = new Random(7);
+			int n = 5000;
+			long[] times = new long[n];
+			double[] values = new double[n];
+			long t = 1500000000000L;
+			double[] specials = { Double.NaN, Double.POSITIVE_INFINITY, -0.0, 0.0,
+					Double.MIN_VALUE, -Double.MAX_VALUE };
+			for (int i = 0; i < n; i++) {
+				// 固定间隔、抖动、大跳跃以及时钟回退
+				int kind = random.nextInt(10);
+				t += kind < 6 ? 10000 : kind < 8 ? random.nextInt(5000) : kind < 9 ? random
+						.nextInt(Integer.MAX_VALUE) : -random.nextInt(100000);
+				times[i] = t;
+				values[i] = random.nextInt(5) == 0 ? specials[random.nextInt(specials.length)]
+						: random.nextBoolean() ? random.nextInt(100) : random.nextGaussian() * 1e6;
+			}
+			ByteBuffer buffer = ByteBuffer.allocate(n * GorillaEncoder.maxBytesPerPoint() + 8)
+					.order(order);
+			GorillaEncoder encoder = new GorillaEncoder(buffer);
+			for (int i = 0; i < n; i++) {
+				assertTrue(encoder.maxBytesForNextPoint() <= GorillaEncoder.maxBytesPerPoint() + 8);
+				encoder.append(times[i], values[i]);
+			}
+			encoder.finish();
+			buffer.flip();
+			GorillaDecoder decoder = new GorillaDecoder(buffer);
+			for (int i = 0; i < n; i++) {
+				decoder.next();
+				assertEquals(times[i], decoder.timeMs());
+				assertEquals(Double.doubleToRawLongBits(values[i]), Double
+						.doubleToRawLongBits(decoder.value()));
+			}
+			assertEquals(n, decoder.count());
+		}
+	}
+
+	@Test
+	public void testOverflow_测试空间不足时状态不变() {
+		ByteBuffer small = ByteBuffer.allocate(8);
+		GorillaEncoder encoder = new GorillaEncoder(small);
+		try {
+			encoder.append(1000L, 1.0);
+			fail("Should have overflowed.");
+		} catch (BufferOverflowException e) {
+			// 预期异常
+		}
+		assertEquals(0, encoder.count());
+		assertEquals(0, small.position());
+		// 换成足够大的缓冲区后可以继续编码
+		ByteBuffer buffer = ByteBuffer.allocate(64);
+		encoder.reset(buffer);
+		encoder.append(1000L, 1.0);
+		encoder.append(2000L, 2.0);
+		encoder.finish();
+		buffer.flip();
+		GorillaDecoder decoder = new GorillaDecoder(buffer);
+		decoder.next();
+		decoder.next();
+		assertEquals(2000L, decoder.timeMs());
+		assertEquals(2.0, decoder.value(), 0.0);
+	}
+
+	@Test
+	public void testCompression_测试典型序列的压缩率() {
+		int n = 1000;
+		ByteBuffer buffer = ByteBuffer.allocate(n * GorillaEncoder.maxBytesPerPoint());
+		GorillaEncoder encoder = new GorillaEncoder(buffer);
+		for (int i = 0; i < n; i++) {
+			// 10秒间隔，缓慢变化的整数Gauge
+			encoder.append(1500000000000L + i * 10000L, 100 + (i / 20) % 7);
+		}
+		encoder.finish();
+		double bytesPerPoint = (double) buffer.position() / n;
+		assertTrue("bytes per point: " + bytesPerPoint, bytesPerPoint < 1.5);
+	}
+
+	@Test
+	public void testWriterReader_测试按编号流式写入与读取() {
+		int metricsCount = 3;
+		int n = 500;
+		ByteBuffer out = ByteBuffer.allocate(2048);
+		ByteBuffer stream = ByteBuffer.allocate(1 << 20);
+		TimeSeriesWriter writer = new TimeSeriesWriter(out, 50);
+		for (int i = 0; i < n; i++) {
+			for (int id = 0; id < metricsCount; id++) {
+				while (true) {
+					try {
+						writer.append(id, i * 1000L, id * 1000 + i);
+						break;
+					} catch (BufferOverflowException e) {
+						drain(out, stream);
+					}
+				}
+			}
+		}
+		while (true) {
+			try {
+				writer.flush();
+				break;
+			} catch (BufferOverflowException e) {
+				drain(out, stream);
+			}
+		}
+		drain(out, stream);
+		assertEquals(metricsCount * n / 50, writer.blocksWritten());
+		stream.flip();
+
+		// 每次只提供一部分数据，不完整的块留到下一次读取
+		int[] next = new int[metricsCount];
+		ByteBuffer in = ByteBuffer.allocate(4096);
+		TimeSeriesReader reader = new TimeSeriesReader(in);
+		in.flip();
+		while (stream.hasRemaining()) {
+			in.compact();
+			int chunk = Math.min(300, Math.min(in.remaining(), stream.remaining()));
+			for (int i = 0; i < chunk; i++) {
+				in.put(stream.get());
+			}
+			in.flip();
+			while (reader.next()) {
+				int id = reader.metricId();
+				assertEquals(next[id] * 1000L, reader.timeMs());
+				assertEquals(id * 1000 + next[id], reader.value(), 0.0);
+				next[id]++;
+			}
+		}
+		for (int id = 0; id < metricsCount; id++) {
+			assertEquals(n, next[id]);
+		}
+	}
+
+	private static void drain(ByteBuffer out, ByteBuffer stream) {
+		out.flip();
+		stream.put(out);
+		out.clear();
+	}
+
+}
@@ -0,0 +1,131 @@
+package io.confluent.common.metrics.history;
+
+import static org.junit.Assert.assertEquals;
+import io.confluent.common.metrics.Measurable;
+import io.confluent.common.metrics.MetricConfig;
+import io.confluent.common.metrics.MetricName;
+import io.confluent.common.metrics.MetricQuery;
+import io.confluent.common.metrics.Metrics;
+import io.confluent.common.utils.MockTime;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class MetricsHistoryTest {
+
+	private static final double EPS = 0.0000001d;
+
+	private final Metrics metrics = new Metrics(new MockTime());
+	private final MetricName name = new MetricName("history.value", "grp1");
+	private double current = 0.0;
+
+	@Test
+	public void testDownsampling_测试多档精度降采样() {
+		MetricsHistory history = history();
+		for (int i = 0; i < 20; i++) {
+			current = i;
+			history.tick(i * 10);
+		}
+		// 细精度只保留最近6个点，起始时间在范围内时使用细精度
+		List<MetricsHistory.Point> fine = history.range(name, 140, 190);
+		assertEquals(6, fine.size());
+		for (int i = 0; i < 6; i++) {
+			assertEquals(140 + i * 10, fine.get(i).timeMs());
+			assertEquals(14 + i, fine.get(i).value(), EPS);
+		}
+		// 起始时间超出细精度范围时使用粗精度，每个点是3次tick的平均值，最后一个点是当前槽位的部分平均值
+		List<MetricsHistory.Point> coarse = history.range(name, 0, 190);
+		assertEquals(7, coarse.size());
+		for (int i = 0; i < 6; i++) {
+			assertEquals(i * 30, coarse.get(i).timeMs());
+			assertEquals(3 * i + 1, coarse.get(i).value(), EPS);
+		}
+		assertEquals(18.5, coarse.get(6).value(), EPS);
+		assertEquals(coarse.size(), history.range(name, 1, 0, 190).size());
+		assertEquals(0, history.range(new MetricName("missing", "grp1"), 0, 190).size());
+	}
+
+	@Test
+	public void testGapsAndBoundedMemory_测试数据间断与固定内存() {
+		MetricsHistory history = history();
+		current = 1.0;
+		history.tick(0);
+		long bytes = history.estimatedBytes();
+		current = 2.0;
+		history.tick(10);
+		current = 100.0;
+		history.tick(1000);
+		assertEquals(bytes, history.estimatedBytes());
+		// 间断很长时旧数据全部被覆盖为空
+		List<MetricsHistory.Point> fine = history.range(name, 0, 0, 1000);
+		assertEquals(1, fine.size());
+		assertEquals(1000, fine.get(0).timeMs());
+		assertEquals(100.0, fine.get(0).value(), EPS);
+		// 粗精度的保留时长同样小于间断，只剩当前槽位
+		List<MetricsHistory.Point> coarse = history.range(name, 1, 0, 1000);
+		assertEquals(1, coarse.size());
+		assertEquals(990, coarse.get(0).timeMs());
+	}
+
+	@Test
+	public void testFilterAndRemoval_测试过滤与删除() {
+		MetricsHistory history = history();
+		metrics.addMetric(new MetricName("other.value", "grp2"), new Measurable() {
+			@Override
+			public double measure(MetricConfig config, long now) {
+				return 1.0;
+			}
+		});
+		assertEquals(1, history.size());
+		metrics.removeMetric(name);
+		assertEquals(0, history.size());
+		assertEquals(0, history.range(name, 0, 1000).size());
+	}
+
+	@Test
+	public void testMaxMetrics_测试跟踪数量上限() {
+		MetricsHistory history = history(2);
+		for (int i = 0; i < 3; i++) {
+			metrics.addMetric(new MetricName("capped" + i, "grp1"), new Measurable() {
+				@Override
+				public double measure(MetricConfig config, long now) {
+					return 1.0;
+				}
+			});
+		}
+		assertEquals(2, history.size());
+		assertEquals(2, history.rejectedMetrics());
+		// 删除后空出的名额可以被新的Metric使用
+		metrics.removeMetric(name);
+		metrics.addMetric(new MetricName("capped3", "grp1"), new Measurable() {
+			@Override
+			public double measure(MetricConfig config, long now) {
+				return 1.0;
+			}
+		});
+		assertEquals(2, history.size());
+		history.tick(0);
+		assertEquals(1, history.range(new MetricName("capped3", "grp1"), 0, 0, 0).size());
+	}
+
+	private MetricsHistory history() {
+		return history(10);
+	}
+
+	private MetricsHistory history(int maxMetrics) {
+		metrics.addMetric(name, new Measurable() {
+			@Override
+			public double measure(MetricConfig config, long now) {
+				return current;
+			}
+		});
+		MetricsHistory history = new MetricsHistory(new MetricQuery().group("grp1"), maxMetrics,
+				new Resolution(10, TimeUnit.MILLISECONDS, 60, TimeUnit.MILLISECONDS),
+				new Resolution(30, TimeUnit.MILLISECONDS, 300, TimeUnit.MILLISECONDS));
+		metrics.addReporter(history);
+		return history;
+	}
+
+}
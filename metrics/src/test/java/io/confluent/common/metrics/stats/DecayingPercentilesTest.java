@@ -0,0 +1,52 @@
+package io.confluent.common.metrics.stats;
+
+import static org.junit.Assert.assertEquals;
+import io.confluent.common.metrics.MetricConfig;
+import io.confluent.common.metrics.MetricName;
+
+import org.junit.Test;
+
+public class DecayingPercentilesTest {
+
+	private final MetricConfig config = new MetricConfig();
+
+	@Test
+	public void testUniform_测试均匀分布的百分比() {
+		DecayingPercentiles percs = new DecayingPercentiles(1028, 0.015, new Percentile(
+				new MetricName("p50", "grp"), 50));
+		long now = 0;
+		for (int i = 0; i < 1000; i++) {
+			percs.record(config, i, now);
+		}
+		assertEquals(500, percs.value(config, now, 0.5), 1.0);
+		assertEquals(990, percs.value(config, now, 0.99), 1.0);
+	}
+
+	@Test
+	public void testRecencyBias_测试偏向最近的数据() {
+		DecayingPercentiles percs = new DecayingPercentiles(200, 0.1);
+		long now = 0;
+		for (int i = 0; i < 10000; i++) {
+			percs.record(config, 10.0, now);
+		}
+		// 延迟分布漂移到100，一分钟后旧数据的权重只剩exp(-6)
+		now += 60 * 1000;
+		for (int i = 0; i < 1000; i++) {
+			percs.record(config, 100.0, now);
+		}
+		assertEquals(100.0, percs.value(config, now, 0.5), 0.0);
+	}
+
+	@Test
+	public void testRescale_测试基准时间调整() {
+		DecayingPercentiles percs = new DecayingPercentiles(100, 1.0);
+		long now = 0;
+		for (int i = 0; i < 10; i++) {
+			// 每次间隔超过调整阈值，权重不能溢出
+			now += 10 * 60 * 1000;
+			percs.record(config, i, now);
+		}
+		assertEquals(9.0, percs.value(config, now, 0.5), 0.0);
+	}
+
+}
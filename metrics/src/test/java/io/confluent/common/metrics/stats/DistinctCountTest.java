@@ -0,0 +1,55 @@
+package io.confluent.common.metrics.stats;
+
+import static org.junit.Assert.assertEquals;
+import io.confluent.common.metrics.MetricConfig;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class DistinctCountTest {
+
+	private final MetricConfig config = new MetricConfig();
+
+	@Test
+	public void testEstimate_测试去重计数误差() {
+		DistinctCount distinct = new DistinctCount(12);
+		long now = 0;
+		for (int i = 0; i < 100000; i++) {
+			// 每个键记录两次，重复的键不影响结果
+			distinct.record(config, "client-" + (i % 50000), 1.0, now);
+		}
+		// 标准误差约1.6%
+		assertEquals(50000, distinct.measure(config, now), 50000 * 0.05);
+	}
+
+	@Test
+	public void testSmallCardinality_测试小基数() {
+		DistinctCount distinct = new DistinctCount();
+		long now = 0;
+		for (int i = 0; i < 10; i++) {
+			distinct.record(config, i, now);
+			distinct.record(config, i, now);
+		}
+		assertEquals(10, distinct.measure(config, now), 0.5);
+	}
+
+	@Test
+	public void testMergeWindows_测试合并多个窗口() {
+		DistinctCount distinct = new DistinctCount();
+		MetricConfig windowed = new MetricConfig().timeWindow(1, TimeUnit.SECONDS).samples(2);
+		long now = 0;
+		for (int i = 0; i < 1000; i++) {
+			distinct.record(windowed, "key-" + i, 1.0, now);
+		}
+		now += 1000;
+		for (int i = 500; i < 1500; i++) {
+			distinct.record(windowed, "key-" + i, 1.0, now);
+		}
+		assertEquals(1500, distinct.measure(windowed, now), 1500 * 0.05);
+		// 第一个窗口过期后只剩第二个窗口的键
+		now += 1000;
+		assertEquals(1000, distinct.measure(windowed, now), 1000 * 0.05);
+	}
+
+}
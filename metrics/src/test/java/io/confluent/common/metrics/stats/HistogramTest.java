@@ -56,6 +56,62 @@ public class HistogramTest {
 		}
 	}
 
+	@Test
+	public void testOffHeapHistogram_堆外直方图与堆内结果一致() {
+		Histogram.BinScheme scheme = new Histogram.LinearBinScheme(100, 1000);
+		// 小块强制跨块切分
+		HistogramArena arena = new HistogramArena(1024);
+		Histogram onHeap = new Histogram(scheme);
+		Histogram offHeap = new Histogram(scheme, arena);
+		Histogram other = new Histogram(scheme, arena);
+		Random random = new Random(17);
+		for (int i = 0; i < 10000; i++) {
+			double value = 1000.0 * random.nextDouble();
+			onHeap.record(value);
+			offHeap.record(value);
+		}
+		other.record(1.0);
+		for (int bin = 0; bin < scheme.bins(); bin++) {
+			assertEquals(onHeap.count(bin), offHeap.count(bin), EPS);
+		}
+		for (double quantile = 0.0; quantile < 1.0; quantile += 0.05) {
+			assertEquals(onHeap.value(quantile), offHeap.value(quantile), EPS);
+		}
+		assertEquals("相邻直方图不能互相覆盖", 1.0, sum(other.counts()), EPS);
+		assertEquals(2 * 4 * scheme.bins(), arena.allocatedBytes());
+		offHeap.clear();
+		assertEquals(0.0, sum(offHeap.counts()), EPS);
+		assertEquals(1.0, sum(other.counts()), EPS);
+	}
+
+	@Test
+	public void testArenaRelease_测试归还的桶被复用() {
+		HistogramArena arena = new HistogramArena(1024);
+		Histogram.BinScheme scheme = new Histogram.ConstantBinScheme(100, 0, 100);
+		Histogram first = new Histogram(scheme, arena);
+		first.record(10.0);
+		first.release();
+		assertEquals(0, arena.allocatedBytes());
+		// 相同桶数复用归还的空间，初始值为0
+		Histogram second = new Histogram(scheme, arena);
+		assertEquals(0.0, sum(second.counts()), EPS);
+		assertEquals(1024, arena.reservedBytes());
+		// 单独申请的大直方图归还后不再计入
+		Histogram large = new Histogram(new Histogram.ConstantBinScheme(1000, 0, 100), arena);
+		assertEquals(1024 + 4000, arena.reservedBytes());
+		large.release();
+		assertEquals(1024, arena.reservedBytes());
+		assertEquals(400, arena.allocatedBytes());
+	}
+
+	private static double sum(float[] counts) {
+		double sum = 0.0;
+		for (float count : counts) {
+			sum += count;
+		}
+		return sum;
+	}
+
 	@Test
 	public void testConstantBinScheme_测试常量容器模型() {
 		// 定义容器中小容器个数为5,数值范围[-5,5]
@@ -69,6 +125,17 @@ public class HistogramTest {
 		checkBinningConsistency(scheme);
 	}
 
+	@Test
+	public void testConstantBinSchemeLong_整数定位桶与浮点结果一致() {
+		for (Histogram.ConstantBinScheme scheme : Arrays.asList(new Histogram.ConstantBinScheme(
+				12, 0, 1000), new Histogram.ConstantBinScheme(7, -10, 40),
+				new Histogram.ConstantBinScheme(100, 0, 7))) {
+			for (long x = -20; x < 1100; x++) {
+				assertEquals("value " + x, scheme.toBin((double) x), scheme.toBin(x));
+			}
+		}
+	}
+
 	@Test
 	public void testLinearBinScheme_测试线性容器模型() {
 		Histogram.LinearBinScheme scheme = new Histogram.LinearBinScheme(10, 10);
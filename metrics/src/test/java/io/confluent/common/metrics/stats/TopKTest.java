@@ -0,0 +1,92 @@
+package io.confluent.common.metrics.stats;
+
+import static org.junit.Assert.assertEquals;
+import io.confluent.common.metrics.MetricConfig;
+import io.confluent.common.metrics.MetricName;
+import io.confluent.common.metrics.Metrics;
+import io.confluent.common.metrics.Sensor;
+import io.confluent.common.utils.MockTime;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TopKTest {
+
+	private static final double EPS = 0.0000001d;
+
+	private final MetricConfig config = new MetricConfig();
+
+	@Test
+	public void testTopBySum_测试按总和统计() {
+		TopK topK = new TopK(4, TopK.Mode.SUM, new MetricName("top1", "grp"), new MetricName(
+				"top2", "grp"));
+		long now = 0;
+		topK.record(config, "a", 10.0, now);
+		topK.record(config, "b", 30.0, now);
+		topK.record(config, "a", 25.0, now);
+		topK.record(config, "c", 5.0, now);
+		List<TopK.Entry> top = topK.top(config, now);
+		assertEquals(2, top.size());
+		assertEquals("a", top.get(0).key());
+		assertEquals(35.0, top.get(0).value(), EPS);
+		assertEquals("b", top.get(1).key());
+		assertEquals(30.0, top.get(1).value(), EPS);
+		// 负值减小计数后仍然替换最小的计数器
+		topK = new TopK(2, TopK.Mode.SUM, new MetricName("top1", "grp"));
+		topK.record(config, "a", 10.0, now);
+		topK.record(config, "b", 20.0, now);
+		topK.record(config, "b", -15.0, now);
+		topK.record(config, "c", 1.0, now);
+		top = topK.top(config, now);
+		assertEquals("a", top.get(0).key());
+		assertEquals(10.0, top.get(0).value(), EPS);
+	}
+
+	@Test
+	public void testHeavyHittersSurviveEviction_测试容量有限时保留高频键() {
+		TopK topK = new TopK(20, TopK.Mode.COUNT, new MetricName("top1", "grp"), new MetricName(
+				"top2", "grp"));
+		Random random = new Random(0);
+		long now = 0;
+		for (int i = 0; i < 10000; i++) {
+			// 两个高频键，其余为大量低频键
+			if (i % 4 == 0) {
+				topK.record(config, "hot1", 1.0, now);
+			} else if (i % 4 == 1) {
+				topK.record(config, "hot2", 1.0, now);
+			} else {
+				topK.record(config, "cold" + random.nextInt(5000), 1.0, now);
+			}
+		}
+		List<TopK.Entry> top = topK.top(config, now);
+		assertEquals(2, top.size());
+		assertEquals(true, top.get(0).key().startsWith("hot"));
+		assertEquals(true, top.get(1).key().startsWith("hot"));
+		// 计数只会高估，误差不超过 N / capacity
+		assertEquals(2500.0, top.get(1).value(), 10000.0 / 20);
+	}
+
+	@Test
+	public void testKeyedSensor_测试通过Sensor记录带键的数据() {
+		Metrics metrics = new Metrics(new MockTime());
+		Sensor sensor = metrics.sensor("client-bytes");
+		TopK topK = new TopK(8, TopK.Mode.SUM, new MetricName("bytes-top1", "grp"));
+		sensor.add(topK);
+		sensor.add(new MetricName("bytes-total", "grp"), new Total());
+		sensor.record("client-1", 100.0);
+		sensor.record("client-2", 300.0);
+		sensor.record("client-1", 100.0);
+		assertEquals(300.0, metrics.metrics().get(new MetricName("bytes-top1", "grp")).value(), EPS);
+		assertEquals(500.0, metrics.metrics().get(new MetricName("bytes-total", "grp")).value(), EPS);
+		List<TopK.Entry> top = sensor.top(topK);
+		assertEquals(1, top.size());
+		assertEquals("client-2", top.get(0).key());
+		assertEquals(300.0, top.get(0).value(), EPS);
+		// 不带键的记录会被忽略
+		sensor.record(1000.0);
+		assertEquals(300.0, metrics.metrics().get(new MetricName("bytes-top1", "grp")).value(), EPS);
+	}
+
+}